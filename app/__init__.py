@@ -4,6 +4,7 @@ from flask import Flask, jsonify, send_from_directory
 from flask_sqlalchemy import SQLAlchemy
 from flask_login import LoginManager, current_user
 from .config import Config # We'll create this file next
+from .storage import configure_storage, init_storage
 
 # Initialize extensions
 db = SQLAlchemy()
@@ -12,7 +13,16 @@ login_manager.login_view = 'auth.login' # Refers to the 'login' route in the 'au
 
 # Import models here to avoid circular imports when db.create_all() is called
 # This needs to be after db is defined and before create_app returns if using create_all in create_app
-from .models import User, CodeSubmission
+from .models import User, CodeSubmission, MethodMetric, Artifact
+from .persistence import init_persistence
+from .identity import identity_cache, load_identity
+from .hashing import password_hasher
+from .metrics import init_metrics
+from .inference import InstrumentedPipeline, telemetry
+from .stub_model import StubPipeline
+from .request_log import init_request_log
+from .profiler import init_profiler
+from .tracing import init_tracing
 
 def create_app(config_class=Config):
     base_dir = os.path.dirname(os.path.abspath(__file__))
@@ -29,12 +39,23 @@ def create_app(config_class=Config):
     # Optionally load instance config
     # app.config.from_pyfile('config.py', silent=True) # if you have instance/config.py
 
+    configure_storage(app) # SQLite pragmas / PostgreSQL pool settings, sized per worker
     db.init_app(app)
     login_manager.init_app(app)
 
+    password_hasher.configure(
+        workers=app.config.get('PASSWORD_HASH_WORKERS', 2),
+        max_pending=app.config.get('PASSWORD_HASH_MAX_PENDING', 16),
+        method=app.config.get('PASSWORD_HASH_METHOD')
+    )
+
+    # Identities are cached per process so authenticated requests skip the user lookup
+    identity_cache.ttl = app.config.get('USER_CACHE_TTL', 60)
+    identity_cache.max_size = app.config.get('USER_CACHE_SIZE', 10000)
+
     @login_manager.user_loader
     def load_user(user_id):
-        return User.query.get(int(user_id))
+        return load_identity(user_id)
 
     # Register blueprints
     from .auth.routes import auth_bp
@@ -42,6 +63,11 @@ def create_app(config_class=Config):
 
     app.register_blueprint(auth_bp, url_prefix='/auth') # All auth routes will be /auth/login, /auth/signup etc.
     app.register_blueprint(main_bp)
+    init_tracing(app) # Request root spans and trace exporters (TRACE_EXPORTERS)
+    init_metrics(app) # Request counters/histograms; /metrics only with METRICS_ENABLED
+    init_request_log(app) # Server-Timing headers and JSON stage logs for the analysis routes
+    init_profiler(app) # Admin-only ?profile=1 on /, /ast-json and /generate-cfg
+    telemetry.resize(app.config.get('INFERENCE_TELEMETRY_WINDOW', 500))
     
     # Add API route for checking authentication
     @app.route('/api/check-auth')
@@ -85,7 +111,20 @@ def create_app(config_class=Config):
             abort(404, description="React build not found. Please run 'npm run build' first.")
 
     with app.app_context():
-        db.create_all() # Create database tables
+        init_storage(app, db)
+        db.create_all() # Create missing tables; columns added to existing tables need `python migrate.py`
+    init_persistence(app) # Background submission writer (PERSISTENCE_MODE)
+
+    backend = app.config.get('MODEL_BACKEND', 'transformers')
+    if backend == 'stub':
+        # Deterministic fake model for benchmarks and load tests; keep its artifacts apart from real ones
+        app.hf_pipeline = InstrumentedPipeline(StubPipeline.from_config(app.config))
+        app.config['MODEL_VERSION'] = 'stub'
+        print("Stub text2text-generation backend initialized.")
+        return app
+    if backend == 'none':
+        app.hf_pipeline = None
+        return app
 
     # Initialize ML Pipeline (consider moving to a dedicated module if complex)
     try:
@@ -105,7 +144,7 @@ def create_app(config_class=Config):
 
         # Optimize for speed: use greedy decoding (num_beams=1) and shorter max_length
         # Enable batch processing for faster inference
-        app.hf_pipeline = hf_pipeline( # Store the pipeline on the app object
+        app.hf_pipeline = InstrumentedPipeline(hf_pipeline( # Store the pipeline on the app object
             "text2text-generation",
             model=model,
             tokenizer=tokenizer,
@@ -115,7 +154,7 @@ def create_app(config_class=Config):
             num_beams=1,  # Greedy decoding (faster than beam search with num_beams=4)
             do_sample=False,  # Deterministic generation
             early_stopping=True
-        )
+        ))
         print("Hugging Face pipeline initialized successfully.")
     except Exception as e:
         print(f"Model initialization error: {str(e)}")
@@ -4,6 +4,8 @@ from flask_login import login_user, logout_user, current_user, login_required
 from sqlalchemy.exc import IntegrityError
 from . import auth_bp # from app/auth/__init__.py
 from ..models import User # from app/models.py
+from ..hashing import HashingBusy, busy_response
+from ..metrics import stage
 from .. import db # from app/__init__.py
 
 @auth_bp.route('/login', methods=['POST']) #
@@ -13,7 +15,11 @@ def login(): #
     username = request.form.get('username') #
     password = request.form.get('password') #
     user = User.query.filter_by(username=username).first() #
-    if user and user.check_password(password): #
+    try:
+        password_ok = user is not None and user.check_password(password)
+    except HashingBusy:
+        return busy_response()
+    if password_ok: #
         login_user(user) #
         return jsonify({'success': True, 'redirect': '/dashboard'})
     # Return JSON error for React
@@ -35,12 +41,16 @@ def signup(): #
         new_user = User(username=username, email=email) #
         new_user.set_password(password) #
         db.session.add(new_user) #
-        db.session.commit() #
+        with stage('db_commit'):
+            db.session.commit() #
         login_user(new_user) #
         return jsonify({'success': True, 'redirect': '/dashboard'})
     except IntegrityError: #
         db.session.rollback() #
         return jsonify({'success': False, 'error': 'Registration failed. Please try again.'}), 400
+    except HashingBusy:
+        db.session.rollback()
+        return busy_response()
     except Exception as e: #
         db.session.rollback() #
         current_app.logger.error(f"Signup error: {e}")
@@ -0,0 +1,223 @@
+# app/cfg_analysis.py
+"""
+Graph analyses over the CFGs built by CFGGenerator.
+
+Dominators use the iterative algorithm of Cooper, Harvey and Kennedy
+("A Simple, Fast Dominance Algorithm") over blocks in reverse postorder,
+which converges in a couple of passes for reducible graphs.
+Natural loops, back edges and loop nesting depth are derived from the
+dominator tree, so no AST re-walk is needed.
+"""
+from .cfg_utils import CFGGenerator
+
+
+def reverse_postorder(cfg, entry):
+    """
+    Return the blocks reachable from entry in reverse postorder (iterative DFS).
+    Successors are visited last-added first: CFGGenerator links a loop condition to
+    its body before its exit, so the exit path finishes first and the loop body is
+    ordered right after its header instead of after everything that follows the loop.
+    Iterative solvers then settle each loop before moving on.
+    """
+    visited = {entry}
+    postorder = []
+    stack = [(entry, reversed(list(cfg.successors(entry))))]
+    while stack:
+        node, successors = stack[-1]
+        for succ in successors:
+            if succ not in visited:
+                visited.add(succ)
+                stack.append((succ, reversed(list(cfg.successors(succ)))))
+                break
+        else:
+            stack.pop()
+            postorder.append(node)
+    postorder.reverse()
+    return postorder
+
+
+def compute_dominators(cfg, entry):
+    """
+    Compute immediate dominators of all blocks reachable from entry.
+    Returns: (order, idom) where order is the reverse postorder and
+    idom maps each block to its immediate dominator (entry maps to itself).
+    """
+    order = reverse_postorder(cfg, entry)
+    index = {node: i for i, node in enumerate(order)}
+    preds = [[index[p] for p in cfg.predecessors(node) if p in index] for node in order]
+
+    idom = [None] * len(order)
+    idom[0] = 0
+
+    def intersect(a, b):
+        while a != b:
+            while a > b:
+                a = idom[a]
+            while b > a:
+                b = idom[b]
+        return a
+
+    changed = True
+    while changed:
+        changed = False
+        for i in range(1, len(order)):
+            new_idom = None
+            for p in preds[i]:
+                if idom[p] is not None:
+                    new_idom = p if new_idom is None else intersect(p, new_idom)
+            if new_idom is not None and idom[i] != new_idom:
+                idom[i] = new_idom
+                changed = True
+
+    return order, {order[i]: order[idom[i]] for i in range(len(order))}
+
+
+def dominator_tree(order, idom):
+    """Build the dominator tree as {block: [children]} from the immediate dominators"""
+    tree = {node: [] for node in order}
+    for node in order[1:]:
+        tree[idom[node]].append(node)
+    return tree
+
+
+def _dominance_intervals(order, tree):
+    """Number the dominator tree in pre/post order so that dominance checks are O(1)"""
+    pre, post = {}, {}
+    counter = 0
+    stack = [(order[0], False)]
+    while stack:
+        node, done = stack.pop()
+        if done:
+            post[node] = counter
+            counter += 1
+            continue
+        pre[node] = counter
+        counter += 1
+        stack.append((node, True))
+        for child in reversed(tree[node]):
+            stack.append((child, False))
+    return pre, post
+
+
+def find_natural_loops(cfg, order, idom):
+    """
+    Find back edges and natural loops.
+    A back edge is an edge (tail, header) where header dominates tail; the natural
+    loop of a header is every block that reaches one of its back-edge tails without
+    passing through the header. Loops sharing a header are merged.
+    Returns: (back_edges, loops, reducible)
+    """
+    reachable = set(order)
+    tree = dominator_tree(order, idom)
+    pre, post = _dominance_intervals(order, tree)
+    rpo_index = {node: i for i, node in enumerate(order)}
+
+    def dominates(a, b):
+        return pre[a] <= pre[b] and post[b] <= post[a]
+
+    back_edges = []
+    reducible = True
+    for tail in order:
+        for header in cfg.successors(tail):
+            if header not in reachable:
+                continue
+            if dominates(header, tail):
+                back_edges.append((tail, header))
+            elif rpo_index[header] <= rpo_index[tail]:
+                # Retreating edge into a block that does not dominate it
+                reducible = False
+
+    bodies = {}
+    for tail, header in back_edges:
+        body = bodies.setdefault(header, {header})
+        worklist = [tail] if tail not in body else []
+        body.add(tail)
+        while worklist:
+            node = worklist.pop()
+            for pred in cfg.predecessors(node):
+                if pred in reachable and pred not in body:
+                    body.add(pred)
+                    worklist.append(pred)
+
+    # Nest loops: the parent of a loop is the smallest other loop containing its header.
+    # Visiting loops from smallest to largest, the first one to reach an inner header is its parent,
+    # so this costs one pass over the loop bodies instead of a pairwise containment check.
+    headers = sorted(bodies, key=lambda h: len(bodies[h]))
+    loops = []
+    parent_of = {}
+    for header in headers:
+        parent_of[header] = None
+        for node in bodies[header]:
+            if node != header and node in parent_of and parent_of[node] is None:
+                parent_of[node] = header
+
+    depth_of = {}
+    for header in reversed(headers):
+        parent = parent_of[header]
+        depth_of[header] = depth_of.get(parent, 0) + 1 if parent else 1
+
+    edges_into = {}
+    for tail, header in back_edges:
+        edges_into.setdefault(header, []).append([tail, header])
+
+    for header in sorted(headers, key=rpo_index.get):
+        loops.append({
+            'header': header,
+            'blocks': sorted(bodies[header], key=rpo_index.get),
+            'back_edges': edges_into[header],
+            'parent': parent_of[header],
+            'depth': depth_of[header]
+        })
+
+    return back_edges, loops, reducible
+
+
+def loop_nesting_depth(order, loops):
+    """Map each block to the number of loops that contain it"""
+    depth = {node: 0 for node in order}
+    for loop in loops:
+        for node in loop['blocks']:
+            depth[node] = max(depth[node], loop['depth'])
+    return depth
+
+
+def analyze_method(cfg, entry):
+    """Run dominator and loop analysis for one method's CFG rooted at entry"""
+    order, idom = compute_dominators(cfg, entry)
+    back_edges, loops, reducible = find_natural_loops(cfg, order, idom)
+    reachable = set(order)
+    edge_count = sum(1 for node in order for succ in cfg.successors(node) if succ in reachable)
+
+    return {
+        'entry': entry,
+        'blocks': len(order),
+        'edges': edge_count,
+        'idom': {node: idom[node] for node in order[1:]},
+        'dominator_tree': dominator_tree(order, idom),
+        'back_edges': [[tail, header] for tail, header in back_edges],
+        'loops': loops,
+        'loop_depth': loop_nesting_depth(order, loops),
+        'max_loop_depth': max((loop['depth'] for loop in loops), default=0),
+        'reducible': reducible,
+        'cyclomatic_complexity': edge_count - len(order) + 2
+    }
+
+
+def build_method_cfgs(java_code: str, target: str = None) -> CFGGenerator:
+    """Build intraprocedural CFGs (calls left as stubs) for every method, or only the target"""
+    generator = CFGGenerator(expand_calls=False)
+    generator.generate(java_code, target=target)
+    return generator
+
+
+def analyze_cfg(java_code: str, target: str = None) -> dict:
+    """
+    Analyze each method's CFG independently.
+    Returns: {"Class.method": {...analysis...}, ...}
+    """
+    generator = build_method_cfgs(java_code, target)
+    results = {}
+    for method_name, entry in generator.method_entries.items():
+        method_key = generator.method_qualified_names.get(method_name, method_name)
+        results[method_key] = analyze_method(generator.cfg, entry)
+    return results
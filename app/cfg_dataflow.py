@@ -0,0 +1,228 @@
+# app/cfg_dataflow.py
+"""
+Bitset dataflow analyses over method CFGs.
+
+Variables and definition sites are numbered, and block facts are Python ints
+used as bitsets, so meet and transfer are single big-int operations per block.
+solve_dataflow is a generic worklist solver for forward and backward union
+problems; reaching definitions, liveness and unused assignments are built on it.
+The worklist always takes the pending block earliest in (reverse) postorder, so
+a loop settles before its facts flow on to the code after it.
+"""
+import heapq
+import itertools
+import javalang
+from .cfg_analysis import reverse_postorder, build_method_cfgs
+
+FORWARD = "forward"
+BACKWARD = "backward"
+
+# Definition kinds: only "init" and "assign" can be reported as unused
+DEF_PARAM = "param"
+DEF_DECLARATION = "declaration"
+DEF_INIT = "init"
+DEF_ASSIGN = "assign"
+
+INCREMENT_OPERATORS = {'++', '--'}
+
+_DIGIT_FLAGS = bytes.maketrans(b'01', b'\x00\x01')
+
+
+def solve_dataflow(preds, succs, gen, kill, direction=FORWARD):
+    """
+    Solve a union dataflow problem with transfer f(x) = gen | (x & ~kill).
+    Blocks are indices 0..n-1 in reverse postorder; preds/succs are lists of index
+    lists and gen/kill are lists of int bitsets.
+    Returns: (in_sets, out_sets) as lists of int bitsets
+    """
+    n = len(gen)
+    if direction == FORWARD:
+        sources, targets, sign = preds, succs, 1
+    else:
+        sources, targets, sign = succs, preds, -1
+
+    # "before" is the meet over sources, "after" is the transfer result
+    before = [0] * n
+    after = [0] * n
+    # Min-heap of sign * index: forward problems visit blocks in reverse postorder, backward ones in postorder.
+    # A FIFO queue would let each loop's update ripple separately through all the code after it.
+    worklist = sorted(sign * b for b in range(n))
+    queued = [True] * n
+
+    while worklist:
+        b = sign * heapq.heappop(worklist)
+        queued[b] = False
+        x = 0
+        for s in sources[b]:
+            x |= after[s]
+        before[b] = x
+        y = gen[b] | (x & ~kill[b])
+        if y != after[b]:
+            after[b] = y
+            for t in targets[b]:
+                if not queued[t]:
+                    queued[t] = True
+                    heapq.heappush(worklist, sign * t)
+
+    if direction == FORWARD:
+        return before, after
+    return after, before
+
+
+def _bit_indices(mask):
+    """List the indices of the set bits of an int bitset"""
+    # One C-level pass over the binary digits; clearing the lowest bit in a loop copies the whole int each time
+    digits = bin(mask)[:1:-1].encode('ascii').translate(_DIGIT_FLAGS)
+    return list(itertools.compress(range(len(digits)), digits))
+
+
+def statement_uses_defs(node):
+    """
+    Extract the variables read and written by one AST node.
+    Uses are treated as happening before defs (so x = x + 1 both uses and defines x).
+    Returns: (uses, defs) where uses is a set of names and defs maps name -> definition kind
+    """
+    uses = set()
+    defs = {}
+    skip = set()  # MemberReferences that are plain assignment targets, not reads
+
+    for _, child in node:
+        if isinstance(child, javalang.tree.FormalParameter):
+            defs[child.name] = DEF_PARAM
+        elif isinstance(child, javalang.tree.VariableDeclarator):
+            defs[child.name] = DEF_INIT if child.initializer is not None else DEF_DECLARATION
+        elif isinstance(child, javalang.tree.Assignment):
+            target = child.expressionl
+            if isinstance(target, javalang.tree.MemberReference) and not target.qualifier:
+                defs[target.member] = DEF_ASSIGN
+                # In javalang the assignment operator is stored in Assignment.type
+                if getattr(child, 'type', '=') == '=':
+                    skip.add(id(target))
+        elif isinstance(child, javalang.tree.MemberReference):
+            if id(child) in skip:
+                continue
+            if child.qualifier:
+                uses.add(child.qualifier.split('.')[0])
+                continue
+            uses.add(child.member)
+            operators = set(child.prefix_operators or []) | set(child.postfix_operators or [])
+            if operators & INCREMENT_OPERATORS:
+                defs[child.member] = DEF_ASSIGN
+        elif isinstance(child, javalang.tree.MethodInvocation) and child.qualifier:
+            uses.add(child.qualifier.split('.')[0])
+    return uses, defs
+
+
+def analyze_method_dataflow(cfg, entry):
+    """Reaching definitions, liveness and unused assignments for one method's CFG"""
+    order = reverse_postorder(cfg, entry)
+    index = {node: i for i, node in enumerate(order)}
+    preds = [[index[p] for p in cfg.predecessors(node) if p in index] for node in order]
+    succs = [[index[s] for s in cfg.successors(node) if s in index] for node in order]
+
+    var_index = {}
+    variables = []
+    local_vars = 0  # Bitset of parameters and locally declared variables
+    definitions = []  # [(var, block, line, kind)], indexed by definition id
+    block_statements = []  # Per block: [(line, use_mask, [(var, def_id, kind)])]
+
+    def var_bit(name):
+        if name not in var_index:
+            var_index[name] = len(variables)
+            variables.append(name)
+        return var_index[name]
+
+    for node in order:
+        block = cfg.nodes[node]
+        statements = []
+        for ast_node in block.get('ast_nodes', []):
+            position = getattr(ast_node, 'position', None)
+            line = position.line if position else block.get('line')
+            uses, defs = statement_uses_defs(ast_node)
+            use_mask = 0
+            for name in uses:
+                use_mask |= 1 << var_bit(name)
+            stmt_defs = []
+            for name, kind in defs.items():
+                var = var_bit(name)
+                if kind != DEF_ASSIGN:
+                    local_vars |= 1 << var
+                stmt_defs.append((var, len(definitions), kind))
+                definitions.append((var, node, line, kind))
+            statements.append((line, use_mask, stmt_defs))
+        block_statements.append(statements)
+
+    # Definition ids of each variable, used as the kill set of reaching definitions
+    defs_of_var = [0] * len(variables)
+    for def_id, (var, _, _, _) in enumerate(definitions):
+        defs_of_var[var] |= 1 << def_id
+
+    n = len(order)
+    rd_gen, rd_kill = [0] * n, [0] * n
+    live_use, live_def = [0] * n, [0] * n
+    for b, statements in enumerate(block_statements):
+        for _, use_mask, stmt_defs in statements:
+            # Upward-exposed uses: read before any def in this block
+            live_use[b] |= use_mask & ~live_def[b]
+            for var, def_id, _ in stmt_defs:
+                live_def[b] |= 1 << var
+                rd_kill[b] |= defs_of_var[var]
+                rd_gen[b] = (rd_gen[b] & ~defs_of_var[var]) | (1 << def_id)
+
+    reaching_in, reaching_out = solve_dataflow(preds, succs, rd_gen, rd_kill, FORWARD)
+    live_in, live_out = solve_dataflow(preds, succs, live_use, live_def, BACKWARD)
+
+    # Unused assignments: a local is written but not live immediately afterwards
+    unused = []
+    for b, statements in enumerate(block_statements):
+        live = live_out[b]
+        for line, use_mask, stmt_defs in reversed(statements):
+            def_mask = 0
+            for var, def_id, kind in stmt_defs:
+                def_mask |= 1 << var
+                if kind in (DEF_INIT, DEF_ASSIGN) and (local_vars >> var) & 1 and not (live >> var) & 1:
+                    unused.append({'variable': variables[var], 'block': order[b], 'line': line, 'definition': def_id})
+            live = use_mask | (live & ~def_mask)
+
+    def names(mask):
+        return [variables[i] for i in _bit_indices(mask)]
+
+    # Neighbouring blocks often carry the same reaching set; expand each distinct set once
+    expanded = {}
+
+    def def_ids(mask):
+        if mask not in expanded:
+            expanded[mask] = _bit_indices(mask)
+        return expanded[mask]
+
+    return {
+        'entry': entry,
+        'variables': variables,
+        'definitions': [
+            {'id': def_id, 'variable': variables[var], 'block': block, 'line': line, 'kind': kind}
+            for def_id, (var, block, line, kind) in enumerate(definitions)
+        ],
+        'blocks': {
+            node: {
+                'reaching_in': def_ids(reaching_in[b]),
+                'reaching_out': def_ids(reaching_out[b]),
+                'live_in': names(live_in[b]),
+                'live_out': names(live_out[b])
+            }
+            for b, node in enumerate(order)
+        },
+        'unused_assignments': unused
+    }
+
+
+def analyze_dataflow(java_code: str, target: str = None) -> dict:
+    """
+    Run the dataflow analyses on each method's CFG independently.
+    Returns: {"Class.method": {...results...}, ...}
+    """
+    generator = build_method_cfgs(java_code, target)
+    results = {}
+    for method_name, entry in generator.method_entries.items():
+        method_key = generator.method_qualified_names.get(method_name, method_name)
+        results[method_key] = analyze_method_dataflow(generator.cfg, entry)
+    return results
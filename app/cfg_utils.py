@@ -1,12 +1,84 @@
 # app/cfg_utils.py
 import javalang
 import networkx as nx
+from .utils import parse_java
+from .metrics import stage
 from graphviz import Digraph
+import atexit
+import hashlib
+import multiprocessing
 import os
 import re
+import threading
+from concurrent.futures import ProcessPoolExecutor
+from concurrent.futures.process import BrokenProcessPool
+
+
+class BlockKind:
+    """Kinds of basic blocks produced by CFGGenerator"""
+    BLOCK = "block"
+    METHOD_ENTRY = "method_entry"
+    METHOD_EXIT = "method_exit"
+    IF_CONDITION = "if_condition"
+    THEN_BRANCH = "then_branch"
+    ELSE_BRANCH = "else_branch"
+    IF_MERGE = "if_merge"
+    WHILE_CONDITION = "while_condition"
+    FOR_INIT = "for_init"
+    FOR_CONDITION = "for_condition"
+    FOR_UPDATE = "for_update"
+    LOOP_BODY = "loop_body"
+    LOOP_EXIT = "loop_exit"
+    DO_WHILE_BODY = "do_while_body"
+    DO_WHILE_CONDITION = "do_while_condition"
+    SWITCH_EXPRESSION = "switch_expression"
+    SWITCH_MERGE = "switch_merge"
+    CASE = "case"
+    BREAK = "break"
+    CONTINUATION = "continuation"  # Block where execution resumes after a method call
+    CALL_STUB = "call_stub"  # Collapsed call site whose callee CFG is fetched on demand
+
+
+# Header shown on the first line of each block when the CFG is rendered
+BLOCK_HEADERS = {
+    BlockKind.BLOCK: "BLOCK",
+    BlockKind.METHOD_ENTRY: "METHOD ENTRY",
+    BlockKind.METHOD_EXIT: "METHOD EXIT",
+    BlockKind.IF_CONDITION: "IF CONDITION",
+    BlockKind.THEN_BRANCH: "THEN BRANCH",
+    BlockKind.ELSE_BRANCH: "ELSE BRANCH",
+    BlockKind.IF_MERGE: "IF MERGE",
+    BlockKind.WHILE_CONDITION: "WHILE CONDITION",
+    BlockKind.FOR_INIT: "FOR INIT",
+    BlockKind.FOR_CONDITION: "FOR CONDITION",
+    BlockKind.FOR_UPDATE: "FOR UPDATE",
+    BlockKind.LOOP_BODY: "LOOP BODY",
+    BlockKind.LOOP_EXIT: "LOOP EXIT",
+    BlockKind.DO_WHILE_BODY: "DO-WHILE BODY",
+    BlockKind.DO_WHILE_CONDITION: "DO-WHILE CONDITION",
+    BlockKind.SWITCH_EXPRESSION: "SWITCH EXPRESSION",
+    BlockKind.SWITCH_MERGE: "SWITCH MERGE",
+    BlockKind.CASE: "CASE",
+    BlockKind.BREAK: "BREAK",
+    BlockKind.CONTINUATION: "BLOCK",
+    BlockKind.CALL_STUB: "CALL",
+}
+
+# Empty blocks of these kinds only join control flow and are dropped when rendering
+PASS_THROUGH_KINDS = frozenset({BlockKind.CONTINUATION, BlockKind.IF_MERGE, BlockKind.SWITCH_MERGE})
+
+# Above this many blocks (after simplification) visualize() renders a per-method summary
+MAX_RENDERED_BLOCKS = 400
+
+# Files with at least this many methods are built in a process pool when workers > 1
+PARALLEL_MIN_METHODS = 64
+
+# Loop condition kinds whose outgoing edges are suppressed inside an infinite loop
+INFINITE_LOOP_CONDITION_KINDS = frozenset({BlockKind.WHILE_CONDITION, BlockKind.FOR_CONDITION})
+
 
 class CFGGenerator:
-    def __init__(self):
+    def __init__(self, expand_calls=True, workers=None):
         self.cfg = nx.DiGraph()
         self.current_block = None
         self.block_counter = 0
@@ -15,22 +87,42 @@ class CFGGenerator:
         self.line_map = {}  # Map statements to line numbers
         self.java_code = ""  # Store original code
         self.method_map = {}  # Map method names to method nodes
+        self.method_qualified_names = {}  # Map bare method names to the "Class.method" key of their first definition
+        self.method_classes = {}  # Map id(method node) to the name of its enclosing class
+        self.class_stack = []  # Enclosing classes of the methods being processed (callers resolve against the last)
         self.method_entries = {}  # Map method names to their entry blocks
         self.method_exits = {}  # Map method names to their exit blocks
         self.method_colors = {}  # Map method names to their unique colors
         self.node_method_map = {}  # Map node IDs to method names for coloring
         self.call_stack = []  # Track method call stack: [(method_name, block_id), ...]
         self.in_infinite_loop = False  # Track if we're in an infinite loop context
+        self.expand_calls = expand_calls  # Inline callee CFGs at call sites (False: emit call stubs instead)
+        self.call_stubs = {}  # Map stub block IDs to the "Class.method" key of the callee
+        self.workers = workers  # Process pool size for large files (None/1: build sequentially)
 
-    def generate(self, java_code: str) -> nx.DiGraph:
-        """Generate CFG from Java code"""
+    def generate(self, java_code: str, target: str = None) -> nx.DiGraph:
+        """
+        Generate CFG from Java code.
+        If target ("Class.method" or "method") is given, only that method's CFG is built
+        and its call sites become stub blocks that can be expanded separately.
+        """
+        tree = self._parse(java_code)
+        self._process_tree(tree, target)
+        return self.cfg
+
+    def list_methods(self, java_code: str) -> list:
+        """Return the "Class.method" keys of all methods in the code, in source order"""
+        tree = self._parse(java_code)
+        return [method_key for method_key, _ in self._collect_methods(tree)]
+
+    def _parse(self, java_code):
+        """Parse Java code (wrapping bare methods in a class if needed) and build the line map"""
         self.java_code = java_code
         try:
             # Try to parse as-is first
-            tree = javalang.parse.parse(java_code)
+            tree = parse_java(java_code)
             self._build_line_map(java_code)
-            self._process_tree(tree)
-            return self.cfg
+            return tree
         except javalang.parser.JavaSyntaxError as e:
             # Check if error is "expected type declaration" at line 1
             error_line = 1
@@ -51,10 +143,9 @@ class CFGGenerator:
                 try:
                     # Wrap code in a public class
                     wrapped_code = f"public class nan {{\n{java_code}\n}}"
-                    tree = javalang.parse.parse(wrapped_code)
+                    tree = parse_java(wrapped_code)
                     self._build_line_map(java_code)  # Use original for line mapping
-                    self._process_tree(tree)
-                    return self.cfg
+                    return tree
                 except Exception as wrap_error:
                     # If wrapping also fails, raise original error
                     raise ValueError(f"Java syntax error: {e}")
@@ -66,10 +157,9 @@ class CFGGenerator:
                    not stripped.startswith('private class ') and not stripped.startswith('protected class '):
                     # Try wrapping in a dummy class
                     wrapped_code = f"public class nan {{\n{java_code}\n}}"
-                    tree = javalang.parse.parse(wrapped_code)
+                    tree = parse_java(wrapped_code)
                     self._build_line_map(java_code)  # Use original for line mapping
-                    self._process_tree(tree)
-                    return self.cfg
+                    return tree
             except:
                 pass
             
@@ -81,20 +171,34 @@ class CFGGenerator:
         for i, line in enumerate(lines):
             self.line_map[i+1] = line.strip()
 
-    def _process_tree(self, tree):
-        """Process AST to build CFG"""
-        # First pass: collect all method declarations
-        current_class = None
+    def _collect_methods(self, tree):
+        """Collect all method declarations, returning [(qualified_key, method_node), ...]"""
         method_list = []
         for path, node in tree:
-            if isinstance(node, javalang.tree.ClassDeclaration):
-                current_class = node.name
-            elif isinstance(node, javalang.tree.MethodDeclaration):
-                # Store method by class and name
+            if isinstance(node, javalang.tree.MethodDeclaration):
+                # The innermost type declaration among the ancestors owns the method (nested classes included)
+                enclosing = [parent for parent in path if isinstance(parent, javalang.tree.TypeDeclaration)]
+                current_class = enclosing[-1].name if enclosing else None
                 method_key = f"{current_class}.{node.name}" if current_class else node.name
-                self.method_map[method_key] = node
-                self.method_map[node.name] = node  # Also store by name only for easier lookup
-                method_list.append((node.name, node))
+                self.method_map.setdefault(method_key, node)
+                # Bare names resolve to the first definition, the one the CFG is built for
+                self.method_map.setdefault(node.name, node)
+                self.method_qualified_names.setdefault(node.name, method_key)
+                self.method_classes[id(node)] = current_class
+                method_list.append((method_key, node))
+        return method_list
+
+    def _resolve_callee(self, method_name):
+        """Return the "Class.method" key a call to method_name refers to, preferring the caller's class"""
+        caller_class = self.class_stack[-1] if self.class_stack else None
+        if caller_class and f"{caller_class}.{method_name}" in self.method_map:
+            return f"{caller_class}.{method_name}"
+        return self.method_qualified_names.get(method_name, method_name)
+
+    def _process_tree(self, tree, target=None):
+        """Process AST to build CFG (for every method, or only for the target method)"""
+        # First pass: collect all method declarations
+        method_list = self._collect_methods(tree)
         
         # Assign unique colors to each method
         color_palette = [
@@ -114,14 +218,103 @@ class CFGGenerator:
             '#D4FFB4',  # Light lime
             '#B4FFD4',  # Light aquamarine
         ]
-        for idx, (method_name, method_node) in enumerate(method_list):
-            self.method_colors[method_name] = color_palette[idx % len(color_palette)]
+        for idx, (method_key, method_node) in enumerate(method_list):
+            self.method_colors[method_node.name] = color_palette[idx % len(color_palette)]
+        
+        if target:
+            # Per-method mode: build only the target CFG and leave calls collapsed
+            if target not in self.method_map:
+                raise ValueError(f"Method not found: {target}")
+            self.expand_calls = False
+            self._process_method(self.method_map[target])
+            return
+        
+        if self.workers and self.workers > 1 and len(method_list) >= PARALLEL_MIN_METHODS:
+            try:
+                self._process_methods_parallel(method_list)
+                return
+            except BrokenProcessPool:
+                _reset_cfg_pool()  # Rebuilt on the next call; this file falls back to sequential construction
         
         # Second pass: process methods
         for path, node in tree:
             if isinstance(node, javalang.tree.MethodDeclaration):
                 self._process_method(node)
 
+    def _process_methods_parallel(self, method_list):
+        """
+        Build each method's intraprocedural CFG in a process pool, then merge the
+        fragments and stitch call edges in a final pass.
+        Each worker parses the code once (per file) and builds contiguous chunks of
+        methods with calls left as stubs, so no state is shared between methods while
+        building. AST nodes are not sent back; blocks carry their positions in the
+        method's AST walk and are resolved against this process's tree.
+        For non-recursive code the result matches the sequential build. Recursive calls
+        differ: stitching links every exit of the callee, while the sequential pass only
+        links the exits created before the recursive call site.
+        """
+        # Only the first method with a given name is built, as in the sequential pass
+        indices = []
+        seen = set()
+        for idx, (method_key, method_node) in enumerate(method_list):
+            if method_node.name not in seen:
+                seen.add(method_node.name)
+                indices.append(idx)
+        
+        chunk_size = max(1, -(-len(indices) // (self.workers * 4)))
+        chunks = [indices[i:i + chunk_size] for i in range(0, len(indices), chunk_size)]
+        executor = _cfg_pool(self.workers)
+        fragments = list(executor.map(_build_cfg_fragment, [self.java_code] * len(chunks), chunks))
+        
+        walks = {}
+        
+        def resolve(position):
+            method_idx, ordinal = position
+            if method_idx not in walks:
+                walks[method_idx] = [node for _, node in method_list[method_idx][1]]
+            return walks[method_idx][ordinal]
+        
+        for fragment in fragments:
+            self._merge_fragment(fragment, resolve)
+        if self.expand_calls:
+            self._stitch_call_stubs()
+    
+    def _merge_fragment(self, fragment, resolve_ast):
+        """Copy a worker's CFG fragment into this graph, renumbering its blocks"""
+        ids = {}
+        for node, data in fragment['nodes']:
+            ids[node] = f"B{self.block_counter}"
+            self.block_counter += 1
+            data['ast_nodes'] = [resolve_ast(position) for position in data['ast_nodes']]
+            self.cfg.add_node(ids[node], **data)
+        self.cfg.add_edges_from((ids[src], ids[dst]) for src, dst in fragment['edges'])
+        for method_name, entry in fragment['method_entries'].items():
+            self.method_entries[method_name] = ids[entry]
+        for method_name, exits in fragment['method_exits'].items():
+            self.method_exits[method_name] = [ids[exit_block] for exit_block in exits]
+        for node, method_name in fragment['node_method_map'].items():
+            self.node_method_map[ids[node]] = method_name
+        for node, callee_key in fragment['call_stubs'].items():
+            self.call_stubs[ids[node]] = callee_key
+    
+    def _stitch_call_stubs(self):
+        """Replace call stubs with edges caller -> callee entry and callee exits -> continuation"""
+        for stub_block, callee_key in list(self.call_stubs.items()):
+            method_name = self.method_map[callee_key].name
+            method_entry = self.method_entries.get(method_name)
+            if method_entry is None:
+                continue
+            callers = list(self.cfg.predecessors(stub_block))
+            continuations = list(self.cfg.successors(stub_block))
+            for caller_block in callers:
+                self.cfg.add_edge(caller_block, method_entry)
+            for exit_block in self.method_exits.get(method_name, []):
+                for continuation_block in continuations:
+                    self.cfg.add_edge(exit_block, continuation_block)
+            self.cfg.remove_node(stub_block)
+            del self.call_stubs[stub_block]
+            self.node_method_map.pop(stub_block, None)
+
     def _process_method(self, method_node):
         """Process a method's CFG"""
         start_line = method_node.position.line if method_node.position else "?"
@@ -133,12 +326,14 @@ class CFGGenerator:
         
         # Reset infinite loop flag for each new method
         self.in_infinite_loop = False
+        self.class_stack.append(self.method_classes.get(id(method_node)))
         
         # Push this method onto the call stack BEFORE creating entry block
         # This ensures the entry block gets this method's color
         self.call_stack.append((method_key, None))
         
-        method_entry = self._new_block(f"METHOD ENTRY: {method_node.name}\nLine: {start_line}")
+        method_entry = self._new_block(BlockKind.METHOD_ENTRY, name=method_node.name, line=start_line)
+        self._attach_ast(method_entry, method_node.parameters)
         self.current_block = method_entry
         
         # Store method entry and assign color
@@ -147,47 +342,39 @@ class CFGGenerator:
         # Update stack with actual entry block
         self.call_stack[-1] = (method_key, method_entry)
 
+        # Exit blocks are recorded as they are created (see _record_method_exit)
+        exit_blocks = self.method_exits.setdefault(method_key, [])
+
         if method_node.body:
             self._process_block(method_node.body)
             # If method doesn't end with return, create implicit exit
             # Check if last block is already a method exit
-            exit_blocks = []
-            if self.current_block and "METHOD EXIT" not in self.cfg.nodes[self.current_block].get("label", ""):
+            if self.current_block and self.current_block not in exit_blocks:
                 # Check if there's already an exit edge
                 has_exit = False
                 for _, dst in self.cfg.out_edges(self.current_block):
-                    if "METHOD EXIT" in self.cfg.nodes[dst].get("label", ""):
+                    if dst in exit_blocks:
                         has_exit = True
-                        exit_blocks.append(dst)
                         break
                 if not has_exit:
-                    exit_block = self._new_block("METHOD EXIT")
+                    exit_block = self._new_block(BlockKind.METHOD_EXIT)
                     self._connect_blocks(self.current_block, exit_block)
-                    exit_blocks.append(exit_block)
-                    self.node_method_map[exit_block] = method_key
-            else:
-                # Find all exit blocks
-                for node in self.cfg.nodes():
-                    if "METHOD EXIT" in self.cfg.nodes[node].get("label", "") and \
-                       self._is_reachable_from(method_entry, node):
-                        exit_blocks.append(node)
-                        if node not in self.node_method_map:
-                            self.node_method_map[node] = method_key
+                    self._record_method_exit(exit_block, method_key)
             
-            # Store method exits
-            if exit_blocks:
-                self.method_exits[method_key] = exit_blocks
-            else:
-                # If no exit found, create one
-                exit_block = self._new_block("METHOD EXIT")
+            # If no exit found, create one
+            if not exit_blocks:
+                exit_block = self._new_block(BlockKind.METHOD_EXIT)
                 if self.current_block:
                     self._connect_blocks(self.current_block, exit_block)
-                self.method_exits[method_key] = [exit_block]
-                self.node_method_map[exit_block] = method_key
+                self._record_method_exit(exit_block, method_key)
+        else:
+            # Abstract/interface methods have no body and therefore no exits
+            del self.method_exits[method_key]
         
         # Pop this method from the call stack when done processing
         if self.call_stack and self.call_stack[-1][0] == method_key:
             self.call_stack.pop()
+        self.class_stack.pop()
 
     def _process_block(self, block_node):
         """Process a block of statements"""
@@ -218,8 +405,9 @@ class CFGGenerator:
         elif isinstance(stmt, javalang.tree.ReturnStatement):
             self._add_statement_to_block(stmt)
             # Create end block for return
-            end_block = self._new_block("METHOD EXIT")
+            end_block = self._new_block(BlockKind.METHOD_EXIT)
             self._connect_blocks(self.current_block, end_block)
+            self._record_method_exit(end_block)
             self.current_block = end_block
         elif isinstance(stmt, javalang.tree.StatementExpression):
             # Check if this is a method call
@@ -241,9 +429,8 @@ class CFGGenerator:
             stmt_text = self._get_statement_text(stmt.position.line)
         
         # Add to current block
-        if "label" not in self.cfg.nodes[self.current_block]:
-            self.cfg.nodes[self.current_block]['label'] = ""
-        self.cfg.nodes[self.current_block]['label'] += f"\nL{line_no}: {stmt_text}"
+        self.cfg.nodes[self.current_block]['statements'].append((line_no, stmt_text))
+        self._attach_ast(self.current_block, stmt)
 
     def _get_statement_text(self, line_no):
         """Get original statement text from line number"""
@@ -314,25 +501,26 @@ class CFGGenerator:
         """Process if statement"""
         cond_line = if_node.condition.position.line if if_node.condition.position else "?"
         cond_text = self._get_statement_text(cond_line)
-        cond_block = self._new_block(f"IF CONDITION\nL{cond_line}: {cond_text}")
+        cond_block = self._new_block(BlockKind.IF_CONDITION, line=cond_line, text=cond_text)
+        self._attach_ast(cond_block, if_node.condition)
         
         # Connect current block to condition
         self._connect_blocks(self.current_block, cond_block)
         
         # Process then branch
-        then_block = self._new_block("THEN BRANCH")
+        then_block = self._new_block(BlockKind.THEN_BRANCH)
         self._connect_blocks(cond_block, then_block)
         prev_block = self.current_block
         self.current_block = then_block
         self._process_statement(if_node.then_statement)
         
         # Create merge point
-        merge_block = self._new_block("IF MERGE")
+        merge_block = self._new_block(BlockKind.IF_MERGE)
         self._connect_blocks(then_block, merge_block)
         
         # Process else branch if exists
         if if_node.else_statement:
-            else_block = self._new_block("ELSE BRANCH")
+            else_block = self._new_block(BlockKind.ELSE_BRANCH)
             self._connect_blocks(cond_block, else_block)
             self.current_block = else_block
             self._process_statement(if_node.else_statement)
@@ -353,9 +541,9 @@ class CFGGenerator:
         
         if never_runs:
             # Loop never runs - create nodes but don't connect them with arrows
-            line_label = f"L{cond_line}: " if cond_line != "?" else ""
-            cond_block = self._new_block(f"WHILE CONDITION\n{line_label}{cond_text}")
-            body_block = self._new_block("LOOP BODY")
+            cond_block = self._new_block(BlockKind.WHILE_CONDITION, line=cond_line, text=cond_text)
+            self._attach_ast(cond_block, while_node.condition)
+            body_block = self._new_block(BlockKind.LOOP_BODY)
             
             # Process body to create its nodes (but don't connect)
             saved_block = self.current_block
@@ -364,7 +552,7 @@ class CFGGenerator:
             self.current_block = saved_block  # Restore - don't connect loop nodes
             
             # Create exit block but don't connect from condition
-            exit_block = self._new_block("LOOP EXIT")
+            exit_block = self._new_block(BlockKind.LOOP_EXIT)
             # Connect from previous block to exit (skip the loop entirely)
             self._connect_blocks(self.current_block, exit_block)
             self.current_block = exit_block
@@ -377,14 +565,14 @@ class CFGGenerator:
         if not is_infinite:
             is_infinite = self._is_infinite_loop_condition(while_node.condition)
         
-        line_label = f"L{cond_line}: " if cond_line != "?" else ""
-        cond_block = self._new_block(f"WHILE CONDITION\n{line_label}{cond_text}")
+        cond_block = self._new_block(BlockKind.WHILE_CONDITION, line=cond_line, text=cond_text)
+        self._attach_ast(cond_block, while_node.condition)
         
         # Connect current block to condition
         self._connect_blocks(self.current_block, cond_block)
         
         # Create loop body block
-        body_block = self._new_block("LOOP BODY")
+        body_block = self._new_block(BlockKind.LOOP_BODY)
         # Always connect condition to body (true branch)
         self._connect_blocks(cond_block, body_block)
         
@@ -396,7 +584,7 @@ class CFGGenerator:
         # Handle exit block based on whether loop is infinite
         if not is_infinite:
             # Normal loop: condition can go to body or exit
-            exit_block = self._new_block("LOOP EXIT")
+            exit_block = self._new_block(BlockKind.LOOP_EXIT)
             self._connect_blocks(cond_block, exit_block)
             self.current_block = exit_block
         else:
@@ -411,7 +599,8 @@ class CFGGenerator:
     def _process_for_statement(self, for_node):
         """Process for loop"""
         # Create init block
-        init_block = self._new_block("FOR INIT")
+        init_block = self._new_block(BlockKind.FOR_INIT)
+        self._attach_ast(init_block, getattr(for_node.control, 'init', None))
         self._connect_blocks(self.current_block, init_block)
         
         # Handle different for loop types
@@ -451,8 +640,11 @@ class CFGGenerator:
             cond_line = for_node.position.line if for_node.position else "?"
             cond_text = "true"
         
-        line_label = f"L{cond_line}: " if cond_line != "?" else ""
-        cond_block = self._new_block(f"FOR CONDITION\n{line_label}{cond_text}")
+        cond_block = self._new_block(BlockKind.FOR_CONDITION, line=cond_line, text=cond_text)
+        if is_foreach:
+            self._attach_ast(cond_block, [for_node.control.var, for_node.control.iterable])
+        elif has_condition:
+            self._attach_ast(cond_block, for_node.control.condition)
         self._connect_blocks(init_block, cond_block)
         
         # Check if loop never runs (always false condition)
@@ -462,7 +654,7 @@ class CFGGenerator:
         
         if never_runs:
             # Loop never runs - create nodes but don't connect them with arrows
-            body_block = self._new_block("LOOP BODY")
+            body_block = self._new_block(BlockKind.LOOP_BODY)
             
             # Process body to create its nodes (but don't connect)
             saved_block = self.current_block
@@ -471,14 +663,14 @@ class CFGGenerator:
             self.current_block = saved_block  # Restore - don't connect loop nodes
             
             # Create exit block but don't connect from condition
-            exit_block = self._new_block("LOOP EXIT")
+            exit_block = self._new_block(BlockKind.LOOP_EXIT)
             # Connect from init block to exit (skip the loop entirely)
             self._connect_blocks(init_block, exit_block)
             self.current_block = exit_block
             return
         
         # Create body block
-        body_block = self._new_block("LOOP BODY")
+        body_block = self._new_block(BlockKind.LOOP_BODY)
         self._connect_blocks(cond_block, body_block)
         
         # Process body
@@ -487,7 +679,7 @@ class CFGGenerator:
         
         # Update block (if exists) - not present in for-each loops
         if not is_foreach and hasattr(for_node.control, 'update') and for_node.control.update:
-            update_block = self._new_block("FOR UPDATE")
+            update_block = self._new_block(BlockKind.FOR_UPDATE)
             self._connect_blocks(body_block, update_block)
             self.current_block = update_block
             # Add update statements
@@ -627,7 +819,7 @@ class CFGGenerator:
         # Only create exit block if not infinite loop
         if not is_infinite:
             # Normal loop: condition can go to body or exit
-            exit_block = self._new_block("LOOP EXIT")
+            exit_block = self._new_block(BlockKind.LOOP_EXIT)
             self._connect_blocks(cond_block, exit_block)
             self.current_block = exit_block
         else:
@@ -648,15 +840,15 @@ class CFGGenerator:
         never_runs = self._is_always_false_condition(do_node.condition)
         
         # Create body block first (do-while executes body before checking condition)
-        body_block = self._new_block("DO-WHILE BODY")
+        body_block = self._new_block(BlockKind.DO_WHILE_BODY)
         
         # Connect current block to body (do-while always executes body at least once)
         self._connect_blocks(self.current_block, body_block)
         
         if never_runs:
             # Loop never runs after first iteration - create nodes but don't loop back
-            line_label = f"L{cond_line}: " if cond_line != "?" else ""
-            cond_block = self._new_block(f"DO-WHILE CONDITION\n{line_label}{cond_text}")
+            cond_block = self._new_block(BlockKind.DO_WHILE_CONDITION, line=cond_line, text=cond_text)
+            self._attach_ast(cond_block, do_node.condition)
             
             # Process body to create its nodes
             saved_block = self.current_block
@@ -668,7 +860,7 @@ class CFGGenerator:
             self._connect_blocks(body_block, cond_block)
             
             # Create exit block - connect from condition (loop executes once then exits)
-            exit_block = self._new_block("LOOP EXIT")
+            exit_block = self._new_block(BlockKind.LOOP_EXIT)
             self._connect_blocks(cond_block, exit_block)
             self.current_block = exit_block
             return
@@ -678,8 +870,8 @@ class CFGGenerator:
         self._process_statement(do_node.body)
         
         # Create condition block
-        line_label = f"L{cond_line}: " if cond_line != "?" else ""
-        cond_block = self._new_block(f"DO-WHILE CONDITION\n{line_label}{cond_text}")
+        cond_block = self._new_block(BlockKind.DO_WHILE_CONDITION, line=cond_line, text=cond_text)
+        self._attach_ast(cond_block, do_node.condition)
         # Connect body to condition (always executed after body)
         self._connect_blocks(body_block, cond_block)
         
@@ -696,7 +888,7 @@ class CFGGenerator:
         # Handle exit block based on whether loop is infinite
         if not is_infinite:
             # Normal loop: condition can go to body or exit
-            exit_block = self._new_block("LOOP EXIT")
+            exit_block = self._new_block(BlockKind.LOOP_EXIT)
             self._connect_blocks(cond_block, exit_block)
             self.current_block = exit_block
         else:
@@ -712,11 +904,12 @@ class CFGGenerator:
         expr_text = self._get_statement_text(expr_line)
         
         # Create switch expression block
-        switch_block = self._new_block(f"SWITCH EXPRESSION\nL{expr_line}: {expr_text}")
+        switch_block = self._new_block(BlockKind.SWITCH_EXPRESSION, line=expr_line, text=expr_text)
+        self._attach_ast(switch_block, switch_node.expression)
         self._connect_blocks(self.current_block, switch_block)
         
         # Create a merge block for after switch
-        merge_block = self._new_block("SWITCH MERGE")
+        merge_block = self._new_block(BlockKind.SWITCH_MERGE)
         
         # Process each case
         case_blocks = {}
@@ -742,7 +935,7 @@ class CFGGenerator:
                     case_label = "default"
                 
                 # Create case label block
-                case_block = self._new_block(f"CASE: {case_label}")
+                case_block = self._new_block(BlockKind.CASE, name=case_label)
                 case_blocks[i] = case_block
                 self._connect_blocks(switch_block, case_block)
                 
@@ -755,7 +948,7 @@ class CFGGenerator:
                         # Check if this is a break statement
                         if isinstance(stmt, javalang.tree.BreakStatement):
                             # Break exits the switch - connect to merge block
-                            break_block = self._new_block("BREAK")
+                            break_block = self._new_block(BlockKind.BREAK)
                             self._connect_blocks(self.current_block, break_block)
                             self._connect_blocks(break_block, merge_block)
                             case_statements_end_blocks[i] = break_block
@@ -793,11 +986,16 @@ class CFGGenerator:
         # Set current block to merge
         self.current_block = merge_block
 
-    def _new_block(self, label=None):
-        """Create a new basic block"""
+    def _new_block(self, kind=BlockKind.BLOCK, name=None, line=None, text=None):
+        """
+        Create a new basic block.
+        Blocks carry structured fields (kind, name, header line/text, a list of
+        (line, text) statements and the AST nodes evaluated in the block, in order);
+        the display label is built in _render_label.
+        """
         block_id = f"B{self.block_counter}"
         self.block_counter += 1
-        self.cfg.add_node(block_id, label=label or "BLOCK")
+        self.cfg.add_node(block_id, kind=kind, name=name, line=line, text=text, statements=[], ast_nodes=[])
         
         # Assign color based on current method in call stack
         if self.call_stack:
@@ -810,13 +1008,22 @@ class CFGGenerator:
         
         return block_id
 
+    def _attach_ast(self, block_id, node):
+        """Record AST node(s) evaluated in a block, for dataflow analysis"""
+        if node is None:
+            return
+        if isinstance(node, (list, tuple)):
+            for item in node:
+                self._attach_ast(block_id, item)
+            return
+        self.cfg.nodes[block_id]['ast_nodes'].append(node)
+
     def _connect_blocks(self, from_block, to_block):
         """Connect two blocks in the CFG"""
         # Don't create edges if we're in an infinite loop context and trying to connect from the loop
         if self.in_infinite_loop and from_block != to_block:
-            # Check if from_block is part of an infinite loop (has "WHILE CONDITION" or "FOR CONDITION" in label)
-            from_label = self.cfg.nodes[from_block].get("label", "")
-            if "WHILE CONDITION" in from_label or "FOR CONDITION" in from_label:
+            # Check if from_block is part of an infinite loop (a while/for condition block)
+            if self.cfg.nodes[from_block]["kind"] in INFINITE_LOOP_CONDITION_KINDS:
                 # Don't create edge from infinite loop condition to anything outside the loop
                 return
         self.cfg.add_edge(from_block, to_block)
@@ -1191,9 +1398,12 @@ class CFGGenerator:
         # Add the method call statement to the current block
         line_no = invocation_node.position.line if invocation_node.position else "?"
         call_text = self._get_statement_text(line_no)
-        if "label" not in self.cfg.nodes[caller_block]:
-            self.cfg.nodes[caller_block]['label'] = ""
-        self.cfg.nodes[caller_block]['label'] += f"\nL{line_no}: {call_text}"
+        self.cfg.nodes[caller_block]['statements'].append((line_no, call_text))
+        self._attach_ast(caller_block, invocation_node)
+        
+        if not self.expand_calls:
+            self._add_call_stub(method_name, caller_block, caller_method)
+            return
         
         # Check if the method exists and has been processed
         if method_name in self.method_map:
@@ -1202,7 +1412,7 @@ class CFGGenerator:
                 # Save current state
                 saved_block = self.current_block
                 # Process the method now (this will push it onto the stack and then pop it)
-                self._process_method(self.method_map[method_name])
+                self._process_method(self.method_map[self._resolve_callee(method_name)])
                 # Restore caller's block (the method processing changed current_block)
                 self.current_block = saved_block
         
@@ -1222,33 +1432,16 @@ class CFGGenerator:
             # Create a continuation block for after the method returns
             # Temporarily pop the called method to get caller's color for continuation block
             self.call_stack.pop()
-            continuation_block = self._new_block("")
+            continuation_block = self._new_block(BlockKind.CONTINUATION)
             # Ensure continuation block has caller's color
             if caller_method:
                 self.node_method_map[continuation_block] = caller_method
             
             # Connect all method exits directly back to continuation block (no intermediate return node)
-            # The exit blocks should already have the called method's color
-            if method_name in self.method_exits:
-                for exit_block in self.method_exits[method_name]:
-                    self._connect_blocks(exit_block, continuation_block)
-                    # Ensure exit blocks have the called method's color
-                    if exit_block not in self.node_method_map:
-                        self.node_method_map[exit_block] = method_name
-            else:
-                # If no exits stored, try to find them by searching from method entry
-                exit_blocks = []
-                for node in self.cfg.nodes():
-                    if "METHOD EXIT" in self.cfg.nodes[node].get("label", "") and \
-                       self._is_reachable_from(method_entry, node):
-                        exit_blocks.append(node)
-                        self._connect_blocks(node, continuation_block)
-                        # Ensure exit blocks have the called method's color
-                        if node not in self.node_method_map:
-                            self.node_method_map[node] = method_name
-                # Store found exits for future use
-                if exit_blocks:
-                    self.method_exits[method_name] = exit_blocks
+            # The exit blocks already have the called method's color
+            # For recursive calls the callee is still being built, so only exits created so far are linked
+            for exit_block in self.method_exits.get(method_name, []):
+                self._connect_blocks(exit_block, continuation_block)
             
             # Set current block to continuation (execution continues here after method returns)
             # The continuation block already has the caller's color
@@ -1258,25 +1451,43 @@ class CFGGenerator:
             # The method call statement is already added to caller_block
             pass
     
-    def _is_reachable_from(self, start_node, target_node):
-        """Check if target_node is reachable from start_node using DFS"""
-        visited = set()
-        stack = [start_node]
-        
-        while stack:
-            node = stack.pop()
-            if node == target_node:
-                return True
-            if node in visited:
-                continue
-            visited.add(node)
-            for _, dst in self.cfg.out_edges(node):
-                if dst not in visited:
-                    stack.append(dst)
-        return False
+    def _add_call_stub(self, method_name, caller_block, caller_method):
+        """Represent a call to a known method as a collapsed stub block instead of inlining the callee"""
+        if method_name not in self.method_map:
+            # Method not found - execution just continues from current block
+            return
+        
+        callee_key = self._resolve_callee(method_name)
+        stub_block = self._new_block(BlockKind.CALL_STUB, name=callee_key)
+        self.call_stubs[stub_block] = callee_key
+        self.node_method_map[stub_block] = method_name  # Stub takes the callee's color
+        self._connect_blocks(caller_block, stub_block)
+        
+        continuation_block = self._new_block(BlockKind.CONTINUATION)
+        if caller_method:
+            self.node_method_map[continuation_block] = caller_method
+        self._connect_blocks(stub_block, continuation_block)
+        self.current_block = continuation_block
 
-    def visualize(self, format="svg", theme="light"):
-        """Generate a visual representation of the CFG and return SVG content"""
+    def _record_method_exit(self, exit_block, method_key=None):
+        """Register an exit block for the method currently being processed"""
+        if method_key is None:
+            if not self.call_stack:
+                return
+            method_key = self.call_stack[-1][0]
+        self.method_exits.setdefault(method_key, []).append(exit_block)
+        self.node_method_map[exit_block] = method_key
+
+    def visualize(self, format="svg", theme="light", simplify=True, node_budget=None):
+        """
+        Generate a visual representation of the CFG and return SVG content.
+        With simplify=True, empty continuation/merge blocks are dropped, straight-line
+        chains are merged into one node and each method is drawn in its own cluster.
+        If the simplified graph still has more than node_budget nodes, a summarized
+        view with one node per method is rendered instead.
+        """
+        if node_budget is None:
+            node_budget = MAX_RENDERED_BLOCKS
         dot = Digraph(format=format)
         dot.attr('node', shape='box', style='rounded,filled', fontname='Courier')
         dot.attr('edge', arrowhead='vee')
@@ -1295,26 +1506,41 @@ class CFGGenerator:
         
         dot.attr('edge', color=default_edge_color)
         
-        for node in self.cfg.nodes():
-            label = self.cfg.nodes[node].get("label", node)
+        def method_color(method_name):
+            color = self.method_colors.get(method_name, default_color)
+            # Adjust color for dark theme
+            if theme == "dark" and method_name in self.method_colors:
+                color = self._darken_color(color)
+            return color
+        
+        graph = self._render_graph(simplify)
+        
+        if graph.number_of_nodes() > node_budget:
+            self._add_summary_nodes(dot, graph, node_budget, method_color, default_text_color, default_edge_color)
+        else:
+            # Group nodes by method so each method can be drawn in its own cluster
+            clusters = {}
+            for node, data in graph.nodes(data=True):
+                clusters.setdefault(data['method'] if simplify else None, []).append(node)
             
-            # Get color for this node based on method assignment
-            color = default_color
-            if node in self.node_method_map:
-                method_name = self.node_method_map[node]
-                if method_name in self.method_colors:
-                    color = self.method_colors[method_name]
-                    # Adjust color for dark theme
-                    if theme == "dark":
-                        color = self._darken_color(color)
+            for idx, (method_name, nodes) in enumerate(clusters.items()):
+                if method_name is None:
+                    for node in nodes:
+                        self._add_dot_node(dot, node, graph.nodes[node], method_color, default_text_color)
+                    continue
+                with dot.subgraph(name=f"cluster_{idx}") as cluster:
+                    cluster.attr(label=self.method_qualified_names.get(method_name, method_name),
+                                 style='rounded,dashed', color=default_edge_color,
+                                 fontcolor=default_text_color, fontname='Courier')
+                    for node in nodes:
+                        self._add_dot_node(cluster, node, graph.nodes[node], method_color, default_text_color)
             
-            dot.node(node, label=label, fillcolor=color, fontcolor=default_text_color)
-        
-        for src, dst in self.cfg.edges():
-            dot.edge(src, dst, color=default_edge_color)
+            for src, dst in graph.edges():
+                dot.edge(src, dst, color=default_edge_color)
         
         # Render to bytes and return SVG content
-        svg_bytes = dot.pipe()
+        with stage('render', format=format, theme=theme, dot_statements=len(dot.body)):
+            svg_bytes = dot.pipe()
         svg_content = svg_bytes.decode('utf-8')
         
         # Post-process SVG to match container background
@@ -1325,6 +1551,113 @@ class CFGGenerator:
         
         return svg_content
     
+    def _add_dot_node(self, dot, node, data, method_color, text_color):
+        """Add one (possibly merged) block to a Graphviz graph or cluster"""
+        label = "\n".join(data['labels'])
+        color = method_color(data['color_method'])
+        if node in self.call_stubs:
+            # Stubs link to the callee so the client can expand it on demand
+            dot.node(node, label=label, fillcolor=color, fontcolor=text_color,
+                     style='rounded,filled,dashed', href=f"#cfg:{self.call_stubs[node]}",
+                     tooltip=f"Expand {self.call_stubs[node]}")
+        else:
+            dot.node(node, label=label, fillcolor=color, fontcolor=text_color)
+    
+    def _block_method(self, node):
+        """Method a block belongs to (call stubs belong to the calling method)"""
+        if node in self.call_stubs:
+            for pred in self.cfg.predecessors(node):
+                return self.node_method_map.get(pred)
+        return self.node_method_map.get(node)
+    
+    def _render_graph(self, simplify):
+        """
+        Build the graph that is actually drawn: nodes carry rendered label lines,
+        the method used for clustering and the method used for coloring.
+        """
+        graph = nx.DiGraph()
+        for node, data in self.cfg.nodes(data=True):
+            graph.add_node(node, labels=[self._render_label(data)],
+                           method=self._block_method(node), color_method=self.node_method_map.get(node))
+        graph.add_edges_from(self.cfg.edges())
+        if not simplify:
+            return graph
+        
+        # Drop empty pass-through blocks (only when it doesn't multiply edges)
+        for node, data in self.cfg.nodes(data=True):
+            if data['kind'] not in PASS_THROUGH_KINDS or data['statements'] or node in self.call_stubs:
+                continue
+            preds = [p for p in graph.predecessors(node) if p != node]
+            succs = [s for s in graph.successors(node) if s != node]
+            if preds and succs and (len(preds) == 1 or len(succs) == 1):
+                graph.remove_node(node)
+                graph.add_edges_from((p, s) for p in preds for s in succs if p != s)
+        
+        # Merge straight-line chains: u -> v where u has one successor and v one predecessor
+        for node in list(graph.nodes()):
+            if node not in graph or node in self.call_stubs:
+                continue
+            while graph.out_degree(node) == 1:
+                succ = next(iter(graph.successors(node)))
+                if succ == node or succ in self.call_stubs or graph.in_degree(succ) != 1 \
+                        or self.cfg.nodes[succ]['kind'] == BlockKind.METHOD_ENTRY \
+                        or graph.nodes[succ]['method'] != graph.nodes[node]['method']:
+                    break
+                graph.nodes[node]['labels'].extend(graph.nodes[succ]['labels'])
+                graph.add_edges_from((node, s) for s in graph.successors(succ))
+                graph.remove_node(succ)
+        return graph
+    
+    def _add_summary_nodes(self, dot, graph, node_budget, method_color, text_color, edge_color):
+        """Summarized view for graphs over the node budget: one node per method, edges for calls"""
+        block_counts = {}
+        for node, data in graph.nodes(data=True):
+            block_counts[data['method']] = block_counts.get(data['method'], 0) + 1
+        
+        dot.attr('graph', label=f"Summarized view: {graph.number_of_nodes()} blocks exceed the budget of "
+                                f"{node_budget}. Click a method to see its CFG.",
+                 fontcolor=text_color, fontname='Courier')
+        for idx, (method_name, count) in enumerate(block_counts.items()):
+            if not method_name:
+                # Blocks outside any method have no CFG of their own to open
+                dot.node(f"M{idx}", label=f"(other)\n{count} blocks", fillcolor=method_color(method_name),
+                         fontcolor=text_color)
+                continue
+            qualified_name = self.method_qualified_names.get(method_name, method_name)
+            dot.node(f"M{idx}", label=f"{qualified_name}\n{count} blocks", fillcolor=method_color(method_name),
+                     fontcolor=text_color, href=f"#cfg:{qualified_name}", tooltip=f"Show {qualified_name}")
+        
+        method_ids = {method_name: f"M{idx}" for idx, method_name in enumerate(block_counts)}
+        call_edges = set()
+        for src, dst in graph.edges():
+            src_method = graph.nodes[src]['method']
+            # Call stubs point at their callee; inlined calls cross method boundaries directly
+            dst_method = self.call_stubs.get(dst) and self.method_map.get(self.call_stubs[dst]) and \
+                self.method_map[self.call_stubs[dst]].name
+            dst_method = dst_method or graph.nodes[dst]['method']
+            if src_method != dst_method and dst_method in method_ids:
+                call_edges.add((method_ids[src_method], method_ids[dst_method]))
+        for src, dst in call_edges:
+            dot.edge(src, dst, color=edge_color)
+    
+    def _render_label(self, block):
+        """Build the display label of a block from its structured fields"""
+        header = BLOCK_HEADERS.get(block.get("kind"), "BLOCK")
+        if block.get("name") is not None:
+            header = f"{header}: {block['name']}"
+        label_lines = [header]
+        
+        line = block.get("line")
+        if block.get("kind") == BlockKind.METHOD_ENTRY:
+            label_lines.append(f"Line: {line}")
+        elif block.get("text") is not None:
+            line_label = f"L{line}: " if line not in (None, "?") else ""
+            label_lines.append(f"{line_label}{block['text']}")
+        
+        for line_no, stmt_text in block.get("statements", []):
+            label_lines.append(f"L{line_no}: {stmt_text}")
+        return "\n".join(label_lines)
+    
     def _darken_color(self, color):
         """Darken a hex color for dark theme"""
         if color.startswith('#'):
@@ -1360,4 +1693,84 @@ class CFGGenerator:
         # Also update any Graphviz-generated background rectangles
         svg_content = re.sub(r'fill="#ffffff00"', 'fill="#ffffff"', svg_content)  # Handle transparent fills that should be white
         return svg_content
-    
\ No newline at end of file
+    
+
+
+# One long-lived pool per process, started with forkserver/spawn: forking a server
+# that already runs threads could hand a worker a lock held by another thread
+_pool = None
+_pool_workers = None
+_pool_lock = threading.Lock()
+
+
+def _cfg_pool(workers):
+    global _pool, _pool_workers
+    with _pool_lock:
+        if _pool is None or _pool_workers != workers:
+            if _pool is not None:
+                _pool.shutdown(wait=False)
+            methods = multiprocessing.get_all_start_methods()
+            context = multiprocessing.get_context('forkserver' if 'forkserver' in methods else 'spawn')
+            _pool = ProcessPoolExecutor(max_workers=workers, mp_context=context)
+            _pool_workers = workers
+        return _pool
+
+
+def _reset_cfg_pool():
+    global _pool
+    with _pool_lock:
+        if _pool is not None:
+            _pool.shutdown(wait=False)
+        _pool = None
+
+
+@atexit.register
+def _shutdown_cfg_pool():
+    if _pool is not None:
+        _pool.shutdown(wait=False, cancel_futures=True)
+
+
+# Per-process state of CFG pool workers: (code hash, generator holding the parsed code, method list)
+_worker_state = None
+
+
+def _parsed_in_worker(java_code):
+    """Parse the code once per worker process and file; later chunks of the same file reuse it"""
+    global _worker_state
+    code_hash = hashlib.sha256(java_code.encode('utf-8')).hexdigest()
+    if _worker_state is None or _worker_state[0] != code_hash:
+        generator = CFGGenerator(expand_calls=False)
+        tree = generator._parse(java_code)
+        _worker_state = (code_hash, generator, generator._collect_methods(tree))
+    return _worker_state[1], _worker_state[2]
+
+
+def _build_cfg_fragment(java_code, indices):
+    """Build the intraprocedural CFGs of the given methods (indices into the method list)"""
+    parsed, method_list = _parsed_in_worker(java_code)
+    generator = CFGGenerator(expand_calls=False)
+    generator.java_code = parsed.java_code
+    generator.line_map = parsed.line_map
+    generator.method_map = parsed.method_map
+    generator.method_qualified_names = parsed.method_qualified_names
+    generator.method_classes = parsed.method_classes
+    positions = {}  # id(AST node) -> (method index, position in the method's AST walk)
+    for idx in indices:
+        generator._process_method(method_list[idx][1])
+        for ordinal, (_, node) in enumerate(method_list[idx][1]):
+            positions.setdefault(id(node), (idx, ordinal))
+    
+    # AST subtrees stay in the worker; the parent resolves positions against its own tree
+    nodes = []
+    for node, data in generator.cfg.nodes(data=True):
+        data = dict(data)
+        data['ast_nodes'] = [positions[id(ast_node)] for ast_node in data['ast_nodes'] if id(ast_node) in positions]
+        nodes.append((node, data))
+    return {
+        'nodes': nodes,
+        'edges': list(generator.cfg.edges()),
+        'method_entries': generator.method_entries,
+        'method_exits': generator.method_exits,
+        'node_method_map': generator.node_method_map,
+        'call_stubs': generator.call_stubs
+    }
@@ -8,4 +8,54 @@ class Config:
     SQLALCHEMY_DATABASE_URI = os.environ.get('DATABASE_URL') or \
         'sqlite:///' + os.path.join(base_dir, '..', 'users.db') # Place DB outside 'app'
     SQLALCHEMY_TRACK_MODIFICATIONS = False
-    MODEL_PATH = "D:/uni/FYP2/SEBIS" # Or get from environment variable
\ No newline at end of file
+    # Connection budget for the whole deployment, split across WEB_CONCURRENCY worker processes
+    WEB_CONCURRENCY = int(os.environ.get('WEB_CONCURRENCY') or 1)
+    DB_MAX_CONNECTIONS = int(os.environ.get('DB_MAX_CONNECTIONS') or 10)
+    DB_MAX_OVERFLOW = int(os.environ.get('DB_MAX_OVERFLOW') or 5) # PostgreSQL only
+    DB_POOL_TIMEOUT = 30
+    DB_POOL_RECYCLE = 1800 # Seconds; avoids connections dropped by the PostgreSQL server
+    SQLITE_TUNED = True # Apply the pragmas below and the pool/busy-timeout engine options to SQLite
+    SQLITE_SYNCHRONOUS = os.environ.get('SQLITE_SYNCHRONOUS') or 'NORMAL' # FULL for strict durability
+    SQLITE_MMAP_SIZE = 256 * 1024 * 1024
+    SQLITE_BUSY_TIMEOUT_MS = 5000
+    # "sync": committed on the request thread before responding;
+    # "write_behind" (opt-in): committed in batches by a background thread (flushed on exit),
+    # so a submission is only readable after its batch is flushed
+    PERSISTENCE_MODE = os.environ.get('PERSISTENCE_MODE') or 'sync'
+    PERSISTENCE_QUEUE_SIZE = 1000 # Full queue falls back to a synchronous commit
+    PERSISTENCE_BATCH_SIZE = 50
+    PERSISTENCE_FLUSH_INTERVAL = 0.5 # Seconds
+    # Password hashing runs on a bounded pool so login bursts can't starve analysis requests
+    PASSWORD_HASH_WORKERS = int(os.environ.get('PASSWORD_HASH_WORKERS') or 2) # 0 hashes inline
+    PASSWORD_HASH_MAX_PENDING = int(os.environ.get('PASSWORD_HASH_MAX_PENDING') or 16) # Beyond this: 503 + Retry-After
+    PASSWORD_HASH_METHOD = os.environ.get('PASSWORD_HASH_METHOD') # e.g. "pbkdf2:sha256:600000"; None = Werkzeug default
+    PASSWORD_HASH_RETRY_AFTER = 1 # Seconds
+    USER_CACHE_TTL = 60 # Seconds a loaded user identity is reused (0 disables the cache)
+    USER_CACHE_SIZE = 10000
+    # Prometheus /metrics: off unless enabled; with a token, scrapers send "Authorization: Bearer <token>"
+    METRICS_ENABLED = os.environ.get('METRICS_ENABLED', '').lower() in ('1', 'true', 'yes')
+    METRICS_TOKEN = os.environ.get('METRICS_TOKEN')
+    INFERENCE_TELEMETRY_WINDOW = 500 # Pipeline calls kept for /api/inference-telemetry
+    # Tracing: comma-separated exporters, "json" (one line per trace) and/or "otlp" (OTLP/HTTP JSON); empty disables spans
+    TRACE_EXPORTERS = [name.strip() for name in (os.environ.get('TRACE_EXPORTERS') or '').split(',') if name.strip()]
+    TRACE_JSON_PATH = os.environ.get('TRACE_JSON_PATH') or os.path.join(base_dir, '..', 'traces', 'traces.jsonl')
+    TRACE_OTLP_ENDPOINT = os.environ.get('TRACE_OTLP_ENDPOINT') or 'http://localhost:4318/v1/traces'
+    TRACE_SERVICE_NAME = 'clarifai'
+    TRACE_MIN_DURATION_MS = float(os.environ.get('TRACE_MIN_DURATION_MS') or 0) # Only export slower requests
+    # Ids of registered users allowed to profile single requests with ?profile=1 (see app/profiler.py)
+    PROFILER_ADMIN_IDS = {int(uid) for uid in (os.environ.get('PROFILER_ADMIN_IDS') or '').split(',') if uid.strip()}
+    PROFILER_ENABLED = True
+    PROFILER_INTERVAL_MS = 1 # Stack sampling period
+    PROFILE_DIR = os.path.join(base_dir, '..', 'profiles') # Collapsed stacks, newest PROFILE_KEEP kept
+    PROFILE_KEEP = 200
+    MODEL_BACKEND = os.environ.get('MODEL_BACKEND') or 'transformers' # "stub": fake model (app/stub_model.py), "none": no comments
+    # Stub latency model in milliseconds: call + batches * batch + items * item + input tokens * token
+    STUB_CALL_LATENCY_MS = float(os.environ.get('STUB_CALL_LATENCY_MS') or 0)
+    STUB_BATCH_LATENCY_MS = float(os.environ.get('STUB_BATCH_LATENCY_MS') or 20)
+    STUB_ITEM_LATENCY_MS = float(os.environ.get('STUB_ITEM_LATENCY_MS') or 15)
+    STUB_TOKEN_LATENCY_MS = float(os.environ.get('STUB_TOKEN_LATENCY_MS') or 0)
+    STUB_JITTER = float(os.environ.get('STUB_JITTER') or 0.1) # Deterministic +/- fraction per call
+    STUB_SERIALIZE = True # One call at a time, like a single shared GPU
+    MODEL_PATH = "D:/uni/FYP2/SEBIS" # Or get from environment variable
+    MODEL_VERSION = os.environ.get('MODEL_VERSION') or os.path.basename(MODEL_PATH) # Shared artifacts are keyed by this
+    CFG_WORKERS = int(os.environ.get('CFG_WORKERS') or 1) # >1: process pool for CFGs of files with many methods (opt-in)
@@ -0,0 +1,76 @@
+# app/hashing.py
+"""
+Bounded password hashing.
+
+Password hashes are computed on a small dedicated thread pool (hashlib's
+PBKDF2/scrypt release the GIL, so the pool size caps the cores a login burst
+can use). At most PASSWORD_HASH_MAX_PENDING hash jobs may be running or queued;
+beyond that HashingBusy is raised immediately so the route can answer with a
+fast "retry later" instead of piling up requests. PASSWORD_HASH_WORKERS = 0
+hashes inline on the request thread.
+"""
+import threading
+from concurrent.futures import ThreadPoolExecutor
+from flask import current_app, jsonify
+from werkzeug.security import generate_password_hash, check_password_hash
+
+
+class HashingBusy(Exception):
+    """Raised when the password hashing queue is full"""
+
+
+def busy_response():
+    """Fast answer (503 + Retry-After) for a request that hit HashingBusy"""
+    response = jsonify({'success': False, 'error': 'Server busy, please retry in a moment.'})
+    response.status_code = 503
+    response.headers['Retry-After'] = str(current_app.config.get('PASSWORD_HASH_RETRY_AFTER', 1))
+    return response
+
+
+class PasswordHasher:
+    def __init__(self, workers=2, max_pending=16, method=None):
+        self.method = method
+        self.workers = workers
+        self.max_pending = max_pending
+        self._executor = None
+        self._slots = None
+        self._lock = threading.Lock()
+
+    def configure(self, workers, max_pending, method=None):
+        with self._lock:
+            if self._executor is not None:
+                self._executor.shutdown(wait=False)
+                self._executor = None
+            self.workers = workers
+            self.max_pending = max_pending
+            self.method = method
+
+    def hash(self, password):
+        if self.method:
+            return self._run(generate_password_hash, password, method=self.method)
+        return self._run(generate_password_hash, password)
+
+    def verify(self, pwhash, password):
+        # The cost of a check is the cost stored in the hash, not the configured method
+        return self._run(check_password_hash, pwhash, password)
+
+    def _run(self, fn, *args, **kwargs):
+        if self.workers <= 0:
+            return fn(*args, **kwargs)
+        executor, slots = self._pool()
+        if not slots.acquire(blocking=False):
+            raise HashingBusy()
+        try:
+            return executor.submit(fn, *args, **kwargs).result()
+        finally:
+            slots.release()
+
+    def _pool(self):
+        with self._lock:
+            if self._executor is None:
+                self._executor = ThreadPoolExecutor(max_workers=self.workers, thread_name_prefix="password-hash")
+                self._slots = threading.BoundedSemaphore(self.max_pending)
+            return self._executor, self._slots
+
+
+password_hasher = PasswordHasher()
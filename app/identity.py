@@ -0,0 +1,75 @@
+# app/identity.py
+"""
+Per-process TTL cache of user identities for Flask-Login's user_loader.
+
+Authenticated requests only need the user's id and name, so the loader returns
+a lightweight UserIdentity from the cache instead of querying the user table on
+every request. Entries expire after USER_CACHE_TTL seconds and are invalidated
+explicitly when an account is deleted; code that needs the User row (e.g. to
+check the password) loads it by current_user.id.
+"""
+import threading
+import time
+from flask_login import UserMixin
+from . import db
+from .models import User
+
+
+class UserIdentity(UserMixin):
+    """Detached snapshot of the User fields used by request handlers"""
+
+    def __init__(self, id, username, email):
+        self.id = id
+        self.username = username
+        self.email = email
+
+
+class IdentityCache:
+    def __init__(self, ttl=60, max_size=10000):
+        self.ttl = ttl
+        self.max_size = max_size
+        self._entries = {}  # user_id -> (expires_at, identity), oldest first
+        self._lock = threading.Lock()
+
+    def get(self, user_id):
+        with self._lock:
+            entry = self._entries.get(user_id)
+            if entry is None:
+                return None
+            if entry[0] < time.monotonic():
+                del self._entries[user_id]
+                return None
+            return entry[1]
+
+    def put(self, identity):
+        with self._lock:
+            self._entries.pop(identity.id, None)
+            while len(self._entries) >= self.max_size:
+                del self._entries[next(iter(self._entries))]
+            self._entries[identity.id] = (time.monotonic() + self.ttl, identity)
+
+    def invalidate(self, user_id):
+        with self._lock:
+            self._entries.pop(user_id, None)
+
+    def clear(self):
+        with self._lock:
+            self._entries.clear()
+
+
+identity_cache = IdentityCache()
+
+
+def load_identity(user_id):
+    """user_loader: cached identity, or a single lookup of the user row on a miss"""
+    user_id = int(user_id)
+    identity = identity_cache.get(user_id)
+    if identity is not None:
+        return identity
+    user = db.session.get(User, user_id)
+    if user is None:
+        return None
+    identity = UserIdentity(user.id, user.username, user.email)
+    if identity_cache.ttl > 0:
+        identity_cache.put(identity)
+    return identity
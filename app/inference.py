@@ -0,0 +1,221 @@
+# app/inference.py
+"""
+Inference telemetry around the text2text-generation pipeline.
+
+InstrumentedPipeline wraps app.hf_pipeline and records, for every call, the
+batch size, input/output token counts, padded input length, wall time and
+tokens/second. Records are kept in a rolling window summarized by
+/api/inference-telemetry and mirrored into the Prometheus registry, so batch
+limits can be tuned from real traffic. Handlers that queue inference on a
+thread pool report how long items waited with record_queue_wait().
+
+The request thread only stores the texts; tokens are counted when telemetry is
+read (/api/inference-telemetry or a /metrics scrape). Calls that leave the
+window before any read are not counted in clarifai_inference_tokens_total.
+Telemetry failures never break inference: the first one is logged with its
+traceback and all of them are counted in the summary's "errors".
+"""
+import logging
+import threading
+import time
+from collections import deque
+from .metrics import Counter, Histogram, REGISTRY, stage, current_route
+
+logger = logging.getLogger('clarifai.inference')
+
+BATCH_SIZE = Histogram('clarifai_inference_batch_size', 'Inputs per pipeline call.', ('route',),
+                       buckets=(1, 2, 4, 8, 16, 32, 64))
+QUEUE_WAIT_SECONDS = Histogram('clarifai_inference_queue_wait_seconds',
+                               'Time an inference item waited for a worker thread.', ('route',))
+
+
+class _PendingTokenCounter(Counter):
+    """Counts the tokens of recorded calls before each scrape"""
+
+    def collect(self):
+        telemetry.count_pending()
+        return super().collect()
+
+
+TOKENS = _PendingTokenCounter('clarifai_inference_tokens_total',
+                              'Tokens processed by the pipeline (kind: input, output, padding).', ('route', 'kind'))
+REGISTRY.extend([BATCH_SIZE, QUEUE_WAIT_SECONDS, TOKENS])
+
+
+def _percentile(values, pct):
+    if not values:
+        return None
+    values = sorted(values)
+    return values[min(len(values) - 1, int(round(pct / 100 * (len(values) - 1))))]
+
+
+class InferenceTelemetry:
+    """Rolling window of per-call inference records"""
+
+    def __init__(self, window=500):
+        self.calls = deque(maxlen=window)
+        self.queue_waits = deque(maxlen=window)
+        self.errors = 0
+        self._lock = threading.Lock()
+        self._count_lock = threading.Lock()  # One reader counts a pending call, so TOKENS is incremented once
+
+    def record_error(self):
+        with self._lock:
+            self.errors += 1
+            first = self.errors == 1
+        if first:
+            logger.exception("Inference telemetry failed; later failures are only counted")
+
+    def resize(self, window):
+        with self._lock:
+            self.calls = deque(self.calls, maxlen=window)
+            self.queue_waits = deque(self.queue_waits, maxlen=window)
+
+    def record_call(self, record):
+        with self._lock:
+            self.calls.append(record)
+
+    def record_queue_wait(self, seconds):
+        with self._lock:
+            self.queue_waits.append(seconds)
+
+    def count_pending(self):
+        """Count the tokens of calls recorded since the last read (off the request path)"""
+        with self._count_lock:
+            with self._lock:
+                pending = [call for call in self.calls if '_count_tokens' in call]
+            for call in pending:
+                count_tokens = call.pop('_count_tokens')
+                try:
+                    count_tokens(call)
+                except Exception:
+                    call.update(input_tokens=0, output_tokens=0, padded_tokens=0, tokens_per_s=None)
+                    self.record_error()
+
+    def recent(self, limit=50):
+        self.count_pending()
+        with self._lock:
+            # Calls recorded after count_pending() are left out until the next read
+            return [call for call in self.calls if 'input_tokens' in call][-limit:]
+
+    def summary(self):
+        self.count_pending()
+        with self._lock:
+            calls = [call for call in self.calls if 'input_tokens' in call]
+            waits = list(self.queue_waits)
+            errors = self.errors
+        if not calls:
+            return {'calls': 0, 'errors': errors}
+
+        batch_sizes = {}
+        for call in calls:
+            batch_sizes[call['batch_size']] = batch_sizes.get(call['batch_size'], 0) + 1
+        input_tokens = sum(call['input_tokens'] for call in calls)
+        output_tokens = sum(call['output_tokens'] for call in calls)
+        padded_tokens = sum(call['padded_tokens'] for call in calls)
+        wall = sum(call['wall_s'] for call in calls)
+        items = sum(call['batch_size'] for call in calls)
+        return {
+            'calls': len(calls),
+            'items': items,
+            'batch_sizes': dict(sorted(batch_sizes.items())),
+            'mean_batch_size': round(items / len(calls), 2),
+            'input_tokens': input_tokens,
+            'output_tokens': output_tokens,
+            'padded_tokens': padded_tokens,
+            'padding_waste': round(1 - input_tokens / padded_tokens, 3) if padded_tokens else None,
+            'tokens_per_s': round((input_tokens + output_tokens) / wall, 1) if wall else None,
+            'items_per_s': round(items / wall, 2) if wall else None,
+            'wall_ms_p50': round(_percentile([c['wall_s'] for c in calls], 50) * 1000, 1),
+            'wall_ms_p95': round(_percentile([c['wall_s'] for c in calls], 95) * 1000, 1),
+            'queue_wait_ms_p50': round(_percentile(waits, 50) * 1000, 1) if waits else None,
+            'queue_wait_ms_p95': round(_percentile(waits, 95) * 1000, 1) if waits else None,
+            'errors': errors
+        }
+
+
+telemetry = InferenceTelemetry()
+
+
+def record_queue_wait(seconds):
+    telemetry.record_queue_wait(seconds)
+    QUEUE_WAIT_SECONDS.observe(seconds, route=current_route())
+
+
+class InstrumentedPipeline:
+    """Wraps the text2text-generation pipeline; call it exactly like the pipeline itself"""
+
+    def __init__(self, pipeline):
+        self.pipeline = pipeline
+
+    def __call__(self, inputs, *args, **kwargs):
+        start = time.perf_counter()
+        texts = inputs if isinstance(inputs, list) else [inputs]
+        with stage('infer', batch_size=len(texts), pipeline_batch_size=kwargs.get('batch_size', 1),
+                   input_chars=sum(len(text) for text in texts)):
+            results = self.pipeline(inputs, *args, **kwargs)
+        wall = time.perf_counter() - start
+        try:
+            self._record(inputs, results, wall, kwargs.get('batch_size', 1))
+        except Exception:
+            telemetry.record_error()  # Telemetry must never break inference
+        return results
+
+    def __getattr__(self, name):
+        return getattr(self.pipeline, name)
+
+    def _token_counts(self, texts):
+        tokenizer = getattr(self.pipeline, 'tokenizer', None)
+        if tokenizer is None:
+            return [len(text.split()) for text in texts]
+        max_length = tokenizer.model_max_length
+        return [min(len(ids), max_length) for ids in tokenizer(texts, truncation=True)['input_ids']]
+
+    def _padded_lengths(self, input_counts, batch_size):
+        """Padded tokens per chunk of batch_size inputs (to max_length, or to the longest input)"""
+        tokenizer = getattr(self.pipeline, 'tokenizer', None)
+        pad_to = None
+        if tokenizer is not None and tokenizer.init_kwargs.get('padding') == 'max_length':
+            pad_to = tokenizer.model_max_length
+        padded = 0
+        batch_size = max(1, batch_size)
+        for i in range(0, len(input_counts), batch_size):
+            chunk = input_counts[i:i + batch_size]
+            padded += len(chunk) * (pad_to or max(chunk))
+        return padded
+
+    def _record(self, inputs, results, wall, batch_size):
+        """Store the call with its texts; tokens are counted later by _count_tokens"""
+        texts = inputs if isinstance(inputs, list) else [inputs]
+        outputs = []
+        for result in results:
+            # Single inputs return [{"generated_text": ...}], batches return one dict (or list) per input
+            if isinstance(result, list):
+                outputs.extend(item['generated_text'] for item in result)
+            else:
+                outputs.append(result['generated_text'])
+
+        route = current_route()
+        telemetry.record_call({
+            'timestamp': time.time(),
+            'route': route,
+            'batch_size': len(texts),
+            'pipeline_batch_size': batch_size,
+            'wall_s': wall,
+            '_count_tokens': lambda record: self._count_tokens(record, texts, outputs)
+        })
+        BATCH_SIZE.observe(len(texts), route=route)
+
+    def _count_tokens(self, record, texts, outputs):
+        input_counts = self._token_counts(texts)
+        input_tokens = sum(input_counts)
+        output_tokens = sum(self._token_counts(outputs)) if outputs else 0
+        padded_tokens = self._padded_lengths(input_counts, record['pipeline_batch_size']) if input_counts else 0
+        wall = record['wall_s']
+        record.update(input_tokens=input_tokens, output_tokens=output_tokens, padded_tokens=padded_tokens,
+                      tokens_per_s=(input_tokens + output_tokens) / wall if wall else None)
+
+        route = record['route']
+        TOKENS.inc(input_tokens, route=route, kind='input')
+        TOKENS.inc(output_tokens, route=route, kind='output')
+        TOKENS.inc(padded_tokens - input_tokens, route=route, kind='padding')
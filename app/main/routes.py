@@ -1,49 +1,137 @@
 # app/main/routes.py
 from asyncio.log import logger
+import base64
 import hashlib
+import json
 import uuid
 import os
+import time
+from datetime import datetime
 import networkx as nx
 from graphviz import Digraph
 from werkzeug import Response
 from concurrent.futures import ThreadPoolExecutor, ProcessPoolExecutor, as_completed
 import multiprocessing
+import threading
 from ..cfg_utils import CFGGenerator 
 from app.cfg_utils import CFGGenerator
+from ..cfg_analysis import analyze_cfg
+from ..cfg_dataflow import analyze_dataflow
 import javalang # For JavaSyntaxError
+from sqlalchemy import func, or_, and_
 from flask import app, request, jsonify, redirect, url_for, current_app, flash, send_from_directory
 from flask_login import login_required, current_user, logout_user
 from . import main_bp # from app/main/__init__.py
-from ..models import CodeSubmission, User # from app/models.py
+from ..models import CodeSubmission, User, MethodMetric, Artifact # from app/models.py
 from .. import db # from app/__init__.py
+from ..persistence import save_submission
+from ..identity import identity_cache
+from ..hashing import HashingBusy, busy_response
 from ..utils import ( # from app/utils.py
     preprocess_code, format_ast, clean_comment, detect_relationships,
-    extract_methods, extract_classes, compute_hash, build_ast_json, wrap_code_if_needed
+    extract_methods, extract_classes, compute_hash, build_ast_json, wrap_code_if_needed, parse_java
 )
+from ..metrics import stage, record_fallback
+from ..request_log import annotate
+from ..inference import telemetry, record_queue_wait
+from ..tracing import bind
+
+# Number of rendered CFGs kept per process; entries are keyed by (code, target, theme)
+# so each method's CFG is cached independently of the full-file graph
+CFG_CACHE_SIZE = 128
+_cfg_cache = {}  # (code, target, theme) -> SVG, least recently used first
+_cfg_cache_lock = threading.Lock()
+
+def _render_cfg_svg(code, target, theme):
+    """
+    Build the CFG for the whole file (target=None) or a single "Class.method" and render it to SVG.
+    Returns (svg, cache_hit); the hit flag belongs to this call, not to a shared counter.
+    """
+    key = (code, target, theme)
+    with _cfg_cache_lock:
+        svg = _cfg_cache.pop(key, None)
+        if svg is not None:
+            _cfg_cache[key] = svg  # Move to the most recently used end
+            return svg, True
+    # Rendered outside the lock; concurrent misses for the same key may both render
+    generator = CFGGenerator(workers=current_app.config.get('CFG_WORKERS'))
+    generator.generate(code, target=target)
+    svg = generator.visualize(format="svg", theme=theme)
+    with _cfg_cache_lock:
+        _cfg_cache.pop(key, None)
+        while len(_cfg_cache) >= CFG_CACHE_SIZE:
+            del _cfg_cache[next(iter(_cfg_cache))]
+        _cfg_cache[key] = svg
+    return svg, False
+
+def clear_cfg_cache():
+    with _cfg_cache_lock:
+        _cfg_cache.clear()
 
 @main_bp.route('/generate-cfg', methods=['POST'])
 @login_required
 def generate_cfg():
     code = request.json.get('code', '')
     theme = request.json.get('theme', 'light')  # Get theme from request
+    target = request.json.get('target') or None  # Optional "Class.method" to build only that method
     
     try:
-        # Create CFG generator
-        generator = CFGGenerator()
-        cfg = generator.generate(code)
-        
-        # Generate SVG content with theme support
-        svg_content = generator.visualize(format="svg", theme=theme)
+        # Generate SVG content with theme support (cached per code/method/theme)
+        svg_content, cache_hit = _render_cfg_svg(code, target, theme)
+        annotate(cache='hit' if cache_hit else 'miss', target=target)
         
         # Return SVG directly
-        return Response(
+        response = Response(
             svg_content,
             mimetype='image/svg+xml',
-            headers={'Content-Disposition': 'inline; filename=cfg.svg'}
+            headers={
+                'Content-Disposition': 'inline; filename=cfg.svg',
+                'Cache-Control': 'private, max-age=300'
+            }
         )
+        response.set_etag(compute_hash(f"{compute_hash(code)}:{target}:{theme}"))
+        return response.make_conditional(request)
+    except Exception as e:
+        return jsonify({"error": str(e)}), 400
+
+@main_bp.route('/cfg-methods', methods=['POST'])
+@login_required
+def cfg_methods():
+    """List the "Class.method" targets that /generate-cfg can build individually"""
+    code = request.json.get('code', '')
+    try:
+        return jsonify({'methods': CFGGenerator().list_methods(code)})
+    except Exception as e:
+        return jsonify({"error": str(e)}), 400
+
+@main_bp.route('/cfg-analysis', methods=['POST'])
+@login_required
+def cfg_analysis():
+    """Dominator tree, natural loops and loop nesting depth for each method's CFG"""
+    code = request.json.get('code', '')
+    target = request.json.get('target') or None  # Optional "Class.method" to analyze a single method
+    try:
+        return jsonify({'methods': analyze_cfg(code, target)})
     except Exception as e:
         return jsonify({"error": str(e)}), 400
 
+@main_bp.route('/cfg-dataflow', methods=['POST'])
+@login_required
+def cfg_dataflow():
+    """Reaching definitions, liveness and unused assignments per block for each method's CFG"""
+    code = request.json.get('code', '')
+    target = request.json.get('target') or None  # Optional "Class.method" to analyze a single method
+    try:
+        return jsonify({'methods': analyze_dataflow(code, target)})
+    except Exception as e:
+        return jsonify({"error": str(e)}), 400
+
+def _model_version():
+    """Model key for shared artifacts; outputs made without a model are not reused once one is loaded"""
+    if getattr(current_app, 'hf_pipeline', None) is None:
+        return 'none'
+    return current_app.config.get('MODEL_VERSION')
+
 @main_bp.route('/', methods=['POST'])
 def home():
     # GET requests are handled by React Router via catch-all route in __init__.py
@@ -76,115 +164,144 @@ def home():
             ).first()
 
             if existing_submission: #
-                ast_output = existing_submission.ast_content #
-                comments_output = existing_submission.comments_content #
-                relationships = detect_relationships(code_input) #
+                annotate(cache='user_hit', classes=existing_submission.class_count,
+                         methods=existing_submission.method_count)
+                ast_output = existing_submission.get_ast() #
+                comments_output = existing_submission.get_comments() #
+                if existing_submission.artifact:
+                    relationships = existing_submission.artifact.relationships()
+                else:
+                    relationships = detect_relationships(code_input) #
             else:
-                # Wrap code in class if needed (handled in utils functions)
-                # Try parsing to catch any remaining errors
-                try:
-                    wrapped_code, was_wrapped = wrap_code_if_needed(code_input)
-                    javalang.parse.parse(wrapped_code)
-                except javalang.parser.JavaSyntaxError as e: #
-                    line_number = getattr(e.at, 'line', 'unknown') #
-                    return jsonify({ #
-                        'comments': f'<div class="comment-error">Java Syntax Error (Line {line_number}): {e.description}</div>',
-                        'ast': format_ast(code_input) # Still show AST if possible
-                    })
-
-                class_structure = extract_classes(code_input) #
-                method_structure = extract_methods(code_input) #
-
-                if isinstance(class_structure, dict) and 'error' in class_structure: #
-                     return jsonify({'comments': class_structure['error'], 'ast': format_ast(code_input)})
-                if isinstance(method_structure, dict) and 'error' in method_structure: #
-                     return jsonify({'comments': method_structure['error'], 'ast': format_ast(code_input)})
-
-
-                ast_output = format_ast(code_input) #
-                relationships = detect_relationships(code_input) #
-                grouped_comments = {} #
-
-                # Batch processing for faster comment generation
-                # Get pipeline reference before processing
-                hf_pipeline = current_app.hf_pipeline
+                # Analysis outputs are shared by all users who submit the same code
+                model_version = _model_version()
+                artifact = Artifact.query.filter_by(code_hash=code_hash, model_version=model_version).first()
+                new_artifact = None
+                if artifact:
+                    # Already analyzed (possibly for another user): skip parsing and inference
+                    ast_output = artifact.ast_content
+                    comments_output = artifact.comments_content
+                    relationships = artifact.relationships()
+                    code_metrics = artifact.metrics()
+                    annotate(cache='artifact_hit')
+                else:
+                    # Wrap code in class if needed (handled in utils functions)
+                    # Try parsing to catch any remaining errors
+                    try:
+                        wrapped_code, was_wrapped = wrap_code_if_needed(code_input)
+                        parse_java(wrapped_code)
+                    except javalang.parser.JavaSyntaxError as e: #
+                        line_number = getattr(e.at, 'line', 'unknown') #
+                        return jsonify({ #
+                            'comments': f'<div class="comment-error">Java Syntax Error (Line {line_number}): {e.description}</div>',
+                            'ast': format_ast(code_input) # Still show AST if possible
+                        })
+
+                    class_structure = extract_classes(code_input) #
+                    method_structure = extract_methods(code_input) #
+
+                    if isinstance(class_structure, dict) and 'error' in class_structure: #
+                         return jsonify({'comments': class_structure['error'], 'ast': format_ast(code_input)})
+                    if isinstance(method_structure, dict) and 'error' in method_structure: #
+                         return jsonify({'comments': method_structure['error'], 'ast': format_ast(code_input)})
+
+
+                    code_metrics = {}
+                    ast_output = format_ast(code_input, metrics=code_metrics) #
+                    annotate(cache='miss')
+                    relationships = detect_relationships(code_input) #
+                    grouped_comments = {} #
+
+                    # Batch processing for faster comment generation
+                    # Get pipeline reference before processing
+                    hf_pipeline = current_app.hf_pipeline
                 
-                # Initialize grouped_comments structure
-                for class_name in class_structure.keys():
-                    grouped_comments[class_name] = {'class_comment': '', 'method_comments': []}
-                for class_name in method_structure.keys():
-                    if class_name not in grouped_comments:
+                    # Initialize grouped_comments structure
+                    for class_name in class_structure.keys():
                         grouped_comments[class_name] = {'class_comment': '', 'method_comments': []}
+                    for class_name in method_structure.keys():
+                        if class_name not in grouped_comments:
+                            grouped_comments[class_name] = {'class_comment': '', 'method_comments': []}
 
-                # Batch process all classes and methods together for maximum speed
-                if hf_pipeline:
-                    # Prepare all inputs for batch processing
-                    all_inputs = []
-                    input_mapping = []  # Track which input corresponds to which class/method
+                    # Batch process all classes and methods together for maximum speed
+                    if hf_pipeline:
+                        # Prepare all inputs for batch processing
+                        all_inputs = []
+                        input_mapping = []  # Track which input corresponds to which class/method
                     
-                    # Add classes
-                    for class_name, class_code in class_structure.items():
-                        processed_class = preprocess_code(class_code)
-                        all_inputs.append(processed_class)
-                        input_mapping.append(('class', class_name, None))
+                        # Add classes
+                        for class_name, class_code in class_structure.items():
+                            processed_class = preprocess_code(class_code)
+                            all_inputs.append(processed_class)
+                            input_mapping.append(('class', class_name, None))
                     
-                    # Add methods
-                    for class_name, methods in method_structure.items():
-                        for method in methods:
-                            processed_method = preprocess_code(method['code'])
-                            all_inputs.append(processed_method)
-                            input_mapping.append(('method', class_name, method['name']))
+                        # Add methods
+                        for class_name, methods in method_structure.items():
+                            for method in methods:
+                                processed_method = preprocess_code(method['code'])
+                                all_inputs.append(processed_method)
+                                input_mapping.append(('method', class_name, method['name']))
                     
-                    # Process in batches (model can handle multiple inputs at once)
-                    if all_inputs:
-                        try:
-                            # Process all inputs in one batch call (much faster than individual calls)
-                            batch_results = hf_pipeline(all_inputs, batch_size=min(8, len(all_inputs)))
+                        # Process in batches (model can handle multiple inputs at once)
+                        if all_inputs:
+                            try:
+                                # Process all inputs in one batch call (much faster than individual calls)
+                                batch_results = hf_pipeline(all_inputs, batch_size=min(8, len(all_inputs)))
                             
-                            # Map results back to classes/methods
-                            for idx, (input_type, class_name, method_name) in enumerate(input_mapping):
-                                if idx < len(batch_results):
-                                    result = batch_results[idx]
-                                    comment = clean_comment(result['generated_text'])
+                                # Map results back to classes/methods
+                                for idx, (input_type, class_name, method_name) in enumerate(input_mapping):
+                                    if idx < len(batch_results):
+                                        result = batch_results[idx]
+                                        comment = clean_comment(result['generated_text'])
                                     
-                                    if input_type == 'class':
-                                        grouped_comments[class_name]['class_comment'] = \
-                                            f'<div class="comment-class" id="class_{class_name}">📦 Class: {class_name}\n{comment}</div>'
-                                    else:  # method
-                                        grouped_comments[class_name]['method_comments'].append(
-                                            f'<div class="comment-method" id="method_{class_name}_{method_name}">◆ {class_name}.{method_name}:\n{comment}</div>'
-                                        )
-                        except Exception as e:
-                            # Fallback to sequential if batch fails
-                            current_app.logger.error(f"Batch processing failed, falling back to sequential: {e}")
-                            # Sequential fallback
-                            for class_name, class_code in class_structure.items():
-                                try:
-                                    processed_class = preprocess_code(class_code)
-                                    result = hf_pipeline(processed_class)
-                                    comment = clean_comment(result[0]['generated_text'])
-                                    grouped_comments[class_name]['class_comment'] = \
-                                        f'<div class="comment-class" id="class_{class_name}">📦 Class: {class_name}\n{comment}</div>'
-                                except Exception as e2:
-                                    print(f"Error generating comment for class {class_name}: {e2}")
-                            
-                            for class_name, methods in method_structure.items():
-                                for method in methods:
+                                        if input_type == 'class':
+                                            grouped_comments[class_name]['class_comment'] = \
+                                                f'<div class="comment-class" id="class_{class_name}">📦 Class: {class_name}\n{comment}</div>'
+                                        else:  # method
+                                            grouped_comments[class_name]['method_comments'].append(
+                                                f'<div class="comment-method" id="method_{class_name}_{method_name}">◆ {class_name}.{method_name}:\n{comment}</div>'
+                                            )
+                            except Exception as e:
+                                # Fallback to sequential if batch fails
+                                current_app.logger.error(f"Batch processing failed, falling back to sequential: {e}")
+                                record_fallback()
+                                # Sequential fallback
+                                for class_name, class_code in class_structure.items():
                                     try:
-                                        processed_method = preprocess_code(method['code'])
-                                        result = hf_pipeline(processed_method)
+                                        processed_class = preprocess_code(class_code)
+                                        result = hf_pipeline(processed_class)
                                         comment = clean_comment(result[0]['generated_text'])
-                                        grouped_comments[class_name]['method_comments'].append(
-                                            f'<div class="comment-method" id="method_{class_name}_{method["name"]}">◆ {class_name}.{method["name"]}:\n{comment}</div>'
-                                        )
+                                        grouped_comments[class_name]['class_comment'] = \
+                                            f'<div class="comment-class" id="class_{class_name}">📦 Class: {class_name}\n{comment}</div>'
                                     except Exception as e2:
-                                        print(f"Error generating comment for method {class_name}.{method['name']}: {e2}")
-
-                comments_output_list = [] #
-                for class_data in grouped_comments.values(): #
-                    if class_data['class_comment']: comments_output_list.append(class_data['class_comment']) #
-                    comments_output_list.extend(class_data['method_comments']) #
-                comments_output = '\n'.join(comments_output_list) if comments_output_list else "No comments generated" #
+                                        print(f"Error generating comment for class {class_name}: {e2}")
+                            
+                                for class_name, methods in method_structure.items():
+                                    for method in methods:
+                                        try:
+                                            processed_method = preprocess_code(method['code'])
+                                            result = hf_pipeline(processed_method)
+                                            comment = clean_comment(result[0]['generated_text'])
+                                            grouped_comments[class_name]['method_comments'].append(
+                                                f'<div class="comment-method" id="method_{class_name}_{method["name"]}">◆ {class_name}.{method["name"]}:\n{comment}</div>'
+                                            )
+                                        except Exception as e2:
+                                            print(f"Error generating comment for method {class_name}.{method['name']}: {e2}")
+
+                    comments_output_list = [] #
+                    for class_data in grouped_comments.values(): #
+                        if class_data['class_comment']: comments_output_list.append(class_data['class_comment']) #
+                        comments_output_list.extend(class_data['method_comments']) #
+                    comments_output = '\n'.join(comments_output_list) if comments_output_list else "No comments generated" #
+
+                    new_artifact = {
+                        'code_hash': code_hash,
+                        'model_version': model_version,
+                        'ast_content': ast_output,
+                        'comments_content': comments_output,
+                        'relationships_content': json.dumps(relationships),
+                        'metrics_content': json.dumps(code_metrics)
+                    }
 
                 # Generate default name if not provided
                 if submission_name_provided and submission_name_provided != '':
@@ -201,17 +318,18 @@ def home():
                         timestamp = datetime.now().strftime("%Y%m%d-%H%M%S")
                         final_submission_name = f"Submission-{timestamp}"
                 
-                new_submission = CodeSubmission(
-                    user_id=current_user.id,
-                    code_content=code_input,
-                    submission_name=final_submission_name,
-                    ast_content=ast_output,
-                    comments_content=comments_output,
-                    code_hash=code_hash,
-                    is_success=True
-                )
-                db.session.add(new_submission) #
-                db.session.commit() #
+                annotate(classes=code_metrics.get('class_count'), methods=code_metrics.get('method_count'))
+                # Committed by the background writer (or inline in sync mode)
+                save_submission({
+                    'user_id': current_user.id,
+                    'code_content': code_input,
+                    'submission_name': final_submission_name,
+                    'code_hash': code_hash,
+                    'is_success': True,
+                    'metrics': code_metrics,
+                    'artifact_id': artifact.id if artifact else None,
+                    'artifact': new_artifact
+                })
 
             return jsonify({ #
                 'comments': comments_output,
@@ -248,14 +366,13 @@ def home():
                     timestamp = datetime.now().strftime("%Y%m%d-%H%M%S")
                     error_name = f"Failed-{timestamp}"
             
-            error_submission = CodeSubmission(
-                user_id=current_user.id,
-                code_content=code_input_for_error,
-                submission_name=error_name,
-                is_success=False
-            )
-            db.session.add(error_submission) #
-            db.session.commit() #
+            db.session.rollback()
+            save_submission({
+                'user_id': current_user.id,
+                'code_content': code_input_for_error,
+                'submission_name': error_name,
+                'is_success': False
+            })
 
             return jsonify({ #
                 'comments': f"Error: {str(e)}",
@@ -268,27 +385,88 @@ def home():
 # Dashboard route removed - handled by React Router
 # Use /api/dashboard for API data
 
+# Sort keys of the dashboard list (?sort=<key>&order=asc|desc); metric columns are NULL
+# for rows stored before metrics existed, so they sort as -1 to keep keyset cursors comparable
+DASHBOARD_SORT_COLUMNS = {
+    'timestamp': CodeSubmission.timestamp,
+    'name': CodeSubmission.submission_name,
+    'complexity': func.coalesce(CodeSubmission.max_complexity, -1),
+    'loc': func.coalesce(CodeSubmission.loc, -1),
+    'methods': func.coalesce(CodeSubmission.method_count, -1)
+}
+DASHBOARD_PAGE_SIZE = 50
+DASHBOARD_MAX_PAGE_SIZE = 200
+
+def _encode_cursor(sort_value, submission_id):
+    if isinstance(sort_value, datetime):
+        sort_value = sort_value.isoformat()
+    return base64.urlsafe_b64encode(json.dumps([sort_value, submission_id]).encode()).decode()
+
+def _decode_cursor(cursor, sort_key):
+    sort_value, submission_id = json.loads(base64.urlsafe_b64decode(cursor.encode()))
+    if sort_key == 'timestamp' and sort_value is not None:
+        sort_value = datetime.fromisoformat(sort_value)
+    return sort_value, int(submission_id)
+
 @main_bp.route('/api/dashboard')
 @login_required
 def api_dashboard():
-    submissions = CodeSubmission.query.filter_by(
-        user_id=current_user.id,
-        is_success=True
-    ).order_by(CodeSubmission.timestamp.desc()).all()
+    """
+    Dashboard stats plus one keyset-paginated page of submissions.
+    Pass the returned next_cursor as ?cursor= to fetch the following page.
+    """
+    user_filter = (CodeSubmission.user_id == current_user.id, CodeSubmission.is_success.is_(True))
+    
+    # Stats are aggregated in SQL (served by the (user_id, is_success, timestamp) index)
+    total_submissions, first_timestamp = db.session.query(
+        func.count(CodeSubmission.id), func.min(CodeSubmission.timestamp)
+    ).filter(*user_filter).one()
+    
+    # Optional metric filters and sort order (served from stored metric columns, no re-parsing)
+    sort_key = request.args.get('sort', 'timestamp')
+    if sort_key not in DASHBOARD_SORT_COLUMNS:
+        sort_key = 'timestamp'
+    sort_column = DASHBOARD_SORT_COLUMNS[sort_key]
+    ascending = request.args.get('order', 'desc') == 'asc'
+    limit = max(1, min(request.args.get('limit', DASHBOARD_PAGE_SIZE, type=int) or DASHBOARD_PAGE_SIZE,
+                       DASHBOARD_MAX_PAGE_SIZE))
     
-    # Calculate user stats
-    total_submissions = len(submissions)
+    query = db.session.query(CodeSubmission, sort_column).filter(*user_filter)
+    min_complexity = request.args.get('min_complexity', type=int)
+    max_complexity = request.args.get('max_complexity', type=int)
+    if min_complexity is not None:
+        query = query.filter(CodeSubmission.max_complexity >= min_complexity)
+    if max_complexity is not None:
+        query = query.filter(CodeSubmission.max_complexity <= max_complexity)
+    
+    cursor = request.args.get('cursor')
+    if cursor:
+        try:
+            last_value, last_id = _decode_cursor(cursor, sort_key)
+        except (ValueError, TypeError):
+            return jsonify({'error': 'Invalid cursor'}), 400
+        if ascending:
+            query = query.filter(or_(sort_column > last_value,
+                                     and_(sort_column == last_value, CodeSubmission.id > last_id)))
+        else:
+            query = query.filter(or_(sort_column < last_value,
+                                     and_(sort_column == last_value, CodeSubmission.id < last_id)))
+    if ascending:
+        query = query.order_by(sort_column.asc(), CodeSubmission.id.asc())
+    else:
+        query = query.order_by(sort_column.desc(), CodeSubmission.id.desc())
+    
+    # Fetch one extra row to know whether another page exists
+    rows = query.limit(limit + 1).all()
+    next_cursor = None
+    if len(rows) > limit:
+        rows = rows[:limit]
+        last_submission, last_value = rows[-1]
+        next_cursor = _encode_cursor(last_value, last_submission.id)
     
     # Account creation date - use first submission timestamp as estimate
     # (If User model had created_at, we'd use that instead)
-    account_creation = None
-    if submissions:
-        first_submission = CodeSubmission.query.filter_by(
-            user_id=current_user.id,
-            is_success=True
-        ).order_by(CodeSubmission.timestamp.asc()).first()
-        if first_submission and first_submission.timestamp:
-            account_creation = first_submission.timestamp.isoformat()
+    account_creation = first_timestamp.isoformat() if first_timestamp else None
     
     # Account level based on submissions (can be refined later)
     if total_submissions < 5:
@@ -310,8 +488,65 @@ def api_dashboard():
         'submissions': [{
             'id': s.id,
             'submission_name': s.submission_name,
-            'timestamp': s.timestamp.isoformat() if s.timestamp else None
-        } for s in submissions]
+            'timestamp': s.timestamp.isoformat() if s.timestamp else None,
+            'metrics': s.metrics_summary()
+        } for s, _ in rows],
+        'next_cursor': next_cursor
+    })
+
+
+@main_bp.route('/api/inference-telemetry')
+@login_required
+def inference_telemetry():
+    """Rolling summary of pipeline calls (batch sizes, tokens/sec, padding waste, queue wait)"""
+    limit = max(1, min(request.args.get('limit', 50, type=int), 500))
+    return jsonify({
+        'model_loaded': getattr(current_app, 'hf_pipeline', None) is not None,
+        'summary': telemetry.summary(),
+        'recent': telemetry.recent(limit)
+    })
+
+
+@main_bp.route('/api/submission-metrics/<int:submission_id>')
+@login_required
+def submission_metrics(submission_id):
+    """Per-method metrics of a submission, with per-class aggregates computed in SQL"""
+    submission = CodeSubmission.query.filter_by(
+        id=submission_id,
+        user_id=current_user.id
+    ).first_or_404()
+    
+    methods = MethodMetric.query.filter_by(submission_id=submission.id) \
+        .order_by(MethodMetric.complexity.desc(), MethodMetric.id).all()
+    class_rows = db.session.query(
+        MethodMetric.class_name,
+        func.count(MethodMetric.id),
+        func.sum(MethodMetric.complexity),
+        func.max(MethodMetric.complexity),
+        func.max(MethodMetric.nesting_depth),
+        func.sum(MethodMetric.loc)
+    ).filter(MethodMetric.submission_id == submission.id) \
+        .group_by(MethodMetric.class_name).all()
+    
+    return jsonify({
+        'summary': submission.metrics_summary(),
+        'classes': [{
+            'name': name,
+            'method_count': method_count,
+            'total_complexity': total_complexity,
+            'max_complexity': max_complexity,
+            'max_nesting': max_nesting,
+            'loc': loc
+        } for name, method_count, total_complexity, max_complexity, max_nesting, loc in class_rows],
+        'methods': [{
+            'class': m.class_name,
+            'name': m.method_name,
+            'line': m.line,
+            'complexity': m.complexity,
+            'nesting_depth': m.nesting_depth,
+            'loc': m.loc,
+            'param_count': m.param_count
+        } for m in methods]
     })
 
 
@@ -323,12 +558,18 @@ def api_dashboard():
 def delete_account(): #
     try:
         password = request.form.get('password') #
-        if not current_user.check_password(password): #
+        user_to_delete = db.session.get(User, current_user.id) # current_user is a cached identity
+        try:
+            password_ok = user_to_delete.check_password(password)
+        except HashingBusy:
+            return busy_response()
+        if not password_ok: #
             return jsonify({'success': False, 'error': 'Incorrect password'}), 401
 
-        user_to_delete = User.query.get(current_user.id) #
         db.session.delete(user_to_delete) #
-        db.session.commit() #
+        with stage('db_commit'):
+            db.session.commit() #
+        identity_cache.invalidate(user_to_delete.id)
         logout_user() #
         return jsonify({'success': True, 'redirect': '/'})
     except Exception as e: #
@@ -346,8 +587,8 @@ def get_submission(submission_id): #
     ).first_or_404()
     return jsonify({ #
         'code_content': submission.code_content, #
-        'ast_content': submission.ast_content, #
-        'comments_content': submission.comments_content #
+        'ast_content': submission.get_ast(), #
+        'comments_content': submission.get_comments() #
     })
 
 
@@ -360,7 +601,8 @@ def rename_submission(submission_id): #
     ).first_or_404()
     new_name = request.json.get('new_name', 'Unnamed Submission') #
     submission.submission_name = new_name #
-    db.session.commit() #
+    with stage('db_commit'):
+        db.session.commit() #
     return jsonify({'status': 'success'}) #
 
 
@@ -373,7 +615,8 @@ def delete_submission(submission_id): #
             user_id=current_user.id #
         ).first_or_404()
         db.session.delete(submission) #
-        db.session.commit() #
+        with stage('db_commit'):
+            db.session.commit() #
         current_app.logger.debug(f"Successfully deleted submission {submission_id} for user {current_user.username}") #
         return jsonify({'status': 'success'}) #
     except Exception as e: #
@@ -404,6 +647,7 @@ def process_folder():
         
         # Process each file
         results = {}
+        folder_classes = folder_methods = 0
         for file in uploaded_files:
             if file.filename.endswith('.java'):
                 code_content = file.read().decode('utf-8')
@@ -422,8 +666,9 @@ def process_folder():
                     hf_pipeline = current_app.hf_pipeline
                     
                     # Generate comments using parallel processing (reuse helper functions)
-                    def generate_class_comment_folder(class_name, class_code):
+                    def generate_class_comment_folder(class_name, class_code, submitted_at):
                         """Generate comment for a single class (folder processing)"""
+                        record_queue_wait(time.perf_counter() - submitted_at)
                         try:
                             processed_class = preprocess_code(class_code)
                             if hf_pipeline:
@@ -435,8 +680,9 @@ def process_folder():
                             return class_name, None
                         return class_name, None
 
-                    def generate_method_comment_folder(class_name, method):
+                    def generate_method_comment_folder(class_name, method, submitted_at):
                         """Generate comment for a single method (folder processing)"""
+                        record_queue_wait(time.perf_counter() - submitted_at)
                         try:
                             processed_method = preprocess_code(method['code'])
                             if hf_pipeline:
@@ -458,17 +704,23 @@ def process_folder():
 
                     # Process classes and methods in parallel
                     max_workers = min(8, len(class_structure) + sum(len(methods) for methods in method_structure.values()))
+                    folder_classes += len(class_structure)
+                    folder_methods += sum(len(methods) for methods in method_structure.values())
                     if max_workers > 0 and hf_pipeline:
-                        with ThreadPoolExecutor(max_workers=max_workers) as executor:
+                        # Worker threads have no request context, so time the whole parallel section here;
+                        # bind() lets their inference spans join this request's trace
+                        with stage('infer'), ThreadPoolExecutor(max_workers=max_workers) as executor:
                             # Submit all class comment generation tasks
                             class_futures = {
-                                executor.submit(generate_class_comment_folder, class_name, class_code): class_name
+                                executor.submit(bind(generate_class_comment_folder),
+                                                class_name, class_code, time.perf_counter()): class_name
                                 for class_name, class_code in class_structure.items()
                             }
                             
                             # Submit all method comment generation tasks
                             method_futures = {
-                                executor.submit(generate_method_comment_folder, class_name, method): (class_name, method['name'])
+                                executor.submit(bind(generate_method_comment_folder),
+                                                class_name, method, time.perf_counter()): (class_name, method['name'])
                                 for class_name, methods in method_structure.items()
                                 for method in methods
                             }
@@ -504,6 +756,7 @@ def process_folder():
                         'error': str(e)
                     }
         
+        annotate(files=len(results), classes=folder_classes, methods=folder_methods)
         return jsonify(results)
         
     except Exception as e:
@@ -0,0 +1,196 @@
+# app/metrics.py
+"""
+In-process metrics exposed at /metrics in the Prometheus text format.
+
+Pipeline stages (parse, extract_classes, extract_methods, infer, render,
+db_commit) are timed with stage() / timed_stage() and recorded in one histogram
+labeled by route and stage; stages can nest (extract_* includes its parse).
+Request duration, request/error counts and model fallbacks to sequential
+inference are recorded per route. Values are per process: with several worker
+processes, scrape each one or aggregate in Prometheus.
+
+/metrics is only served when METRICS_ENABLED is set, and when METRICS_TOKEN is
+set the scraper must send "Authorization: Bearer <token>"; otherwise it answers 404.
+"""
+import functools
+import hmac
+import threading
+import time
+from contextlib import contextmanager
+from flask import Response, abort, g, has_request_context, request
+from .tracing import span, tracer
+
+# Histogram bucket upper bounds in seconds
+DEFAULT_BUCKETS = (0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60)
+
+
+def _format_labels(names, values):
+    if not names:
+        return ''
+    pairs = []
+    for name, value in zip(names, values):
+        escaped = str(value).replace('\\', '\\\\').replace('"', '\\"').replace('\n', '\\n')
+        pairs.append(f'{name}="{escaped}"')
+    return '{' + ','.join(pairs) + '}'
+
+
+def _format_value(value):
+    return repr(float(value)) if value != int(value) else str(int(value))
+
+
+class Counter:
+    def __init__(self, name, documentation, labelnames=()):
+        self.name = name
+        self.documentation = documentation
+        self.labelnames = tuple(labelnames)
+        self._values = {}
+        self._lock = threading.Lock()
+
+    def inc(self, amount=1, **labels):
+        key = tuple(labels.get(name, '') for name in self.labelnames)
+        with self._lock:
+            self._values[key] = self._values.get(key, 0) + amount
+
+    def collect(self):
+        lines = [f'# HELP {self.name} {self.documentation}', f'# TYPE {self.name} counter']
+        with self._lock:
+            for key, value in sorted(self._values.items()):
+                lines.append(f'{self.name}{_format_labels(self.labelnames, key)} {_format_value(value)}')
+        return lines
+
+
+class Histogram:
+    def __init__(self, name, documentation, labelnames=(), buckets=DEFAULT_BUCKETS):
+        self.name = name
+        self.documentation = documentation
+        self.labelnames = tuple(labelnames)
+        self.buckets = tuple(buckets)
+        self._values = {}  # label values -> [bucket counts..., sum, count]
+        self._lock = threading.Lock()
+
+    def observe(self, value, **labels):
+        key = tuple(labels.get(name, '') for name in self.labelnames)
+        with self._lock:
+            state = self._values.get(key)
+            if state is None:
+                state = self._values[key] = [0] * (len(self.buckets) + 2)
+            for i, bound in enumerate(self.buckets):
+                if value <= bound:
+                    state[i] += 1
+            state[-2] += value
+            state[-1] += 1
+
+    def collect(self):
+        lines = [f'# HELP {self.name} {self.documentation}', f'# TYPE {self.name} histogram']
+        bucket_labels = self.labelnames + ('le',)
+        with self._lock:
+            for key, state in sorted(self._values.items()):
+                for bound, count in zip(self.buckets, state):
+                    lines.append(f'{self.name}_bucket{_format_labels(bucket_labels, key + (bound,))} {count}')
+                lines.append(f'{self.name}_bucket{_format_labels(bucket_labels, key + ("+Inf",))} {state[-1]}')
+                lines.append(f'{self.name}_sum{_format_labels(self.labelnames, key)} {_format_value(state[-2])}')
+                lines.append(f'{self.name}_count{_format_labels(self.labelnames, key)} {state[-1]}')
+        return lines
+
+
+REQUESTS = Counter('clarifai_requests_total', 'HTTP requests handled.', ('route', 'method', 'status'))
+REQUEST_ERRORS = Counter('clarifai_request_errors_total', 'Requests that raised or returned a 5xx status.', ('route',))
+MODEL_FALLBACKS = Counter('clarifai_model_fallbacks_total',
+                          'Batched inference failures that fell back to sequential inference.', ('route',))
+REQUEST_SECONDS = Histogram('clarifai_request_duration_seconds', 'Total request time.', ('route', 'method'))
+STAGE_SECONDS = Histogram('clarifai_stage_duration_seconds', 'Time spent in a pipeline stage.', ('route', 'stage'))
+
+REGISTRY = [REQUESTS, REQUEST_ERRORS, MODEL_FALLBACKS, REQUEST_SECONDS, STAGE_SECONDS]
+
+
+def current_route():
+    """Route template of the current request (bounded label cardinality), or "background" outside requests"""
+    if not has_request_context():
+        return 'background'
+    return request.url_rule.rule if request.url_rule else 'unmatched'
+
+
+@contextmanager
+def stage(name, **attributes):
+    """
+    Time a block as a pipeline stage of the current route.
+    Inside a request, the stage's exclusive time (minus nested stages) is also
+    accumulated in g.stage_timings for the Server-Timing header and request log.
+    The block also runs in a trace span with the given attributes, which is
+    yielded so the block can add more (e.g. result counts).
+    """
+    start = time.perf_counter()
+    frame = None
+    if has_request_context():
+        frame = [name, 0.0]  # [stage, time spent in nested stages]
+        g.setdefault('stage_stack', []).append(frame)
+    try:
+        with span(name, **attributes) as current:
+            yield current
+    finally:
+        elapsed = time.perf_counter() - start
+        STAGE_SECONDS.observe(elapsed, route=current_route(), stage=name)
+        if frame is not None:
+            stack = g.stage_stack
+            stack.pop()
+            if stack:
+                stack[-1][1] += elapsed
+            timings = g.setdefault('stage_timings', {})
+            timings[name] = timings.get(name, 0.0) + elapsed - frame[1]
+
+
+def timed_stage(name, attributes=None):
+    """
+    Decorator form of stage(). attributes(*args, result) may return extra span
+    attributes; it is only called while tracing is enabled.
+    """
+    def decorator(fn):
+        @functools.wraps(fn)
+        def wrapper(*args, **kwargs):
+            with stage(name) as current:
+                result = fn(*args, **kwargs)
+                if attributes is not None and tracer.enabled:
+                    current.set_attributes(**attributes(*args, result))
+                return result
+        return wrapper
+    return decorator
+
+
+def record_fallback():
+    MODEL_FALLBACKS.inc(route=current_route())
+
+
+def render_metrics():
+    lines = []
+    for metric in REGISTRY:
+        lines.extend(metric.collect())
+    return '\n'.join(lines) + '\n'
+
+
+def init_metrics(app):
+    """Register request hooks and, when METRICS_ENABLED, the /metrics endpoint"""
+
+    @app.before_request
+    def _start_request_timer():
+        g.request_start = time.perf_counter()
+
+    @app.after_request
+    def _record_request(response):
+        route = current_route()
+        REQUESTS.inc(route=route, method=request.method, status=response.status_code)
+        if response.status_code >= 500:
+            REQUEST_ERRORS.inc(route=route)
+        start = g.get('request_start')
+        if start is not None:
+            REQUEST_SECONDS.observe(time.perf_counter() - start, route=route, method=request.method)
+        return response
+
+    if not app.config.get('METRICS_ENABLED'):
+        return
+    token = app.config.get('METRICS_TOKEN')
+
+    @app.route('/metrics')
+    def metrics():
+        if token and not hmac.compare_digest(request.headers.get('Authorization', ''), f"Bearer {token}"):
+            abort(404)  # Don't reveal the endpoint to unauthenticated clients
+        return Response(render_metrics(), mimetype='text/plain; version=0.0.4')
@@ -1,8 +1,9 @@
 # app/models.py
+import json
 from flask_login import UserMixin
-from werkzeug.security import generate_password_hash, check_password_hash
+from .hashing import password_hasher
 from datetime import datetime, timezone
-from sqlalchemy.orm import relationship
+from sqlalchemy.orm import relationship, deferred
 from . import db # Import db from app/__init__.py
 
 class User(UserMixin, db.Model):
@@ -13,20 +14,87 @@ class User(UserMixin, db.Model):
 
     submissions = relationship("CodeSubmission", backref="user", cascade="all, delete-orphan")
 
+    # Both may raise HashingBusy when the bounded hashing pool is saturated
     def set_password(self, password):
-        self.password_hash = generate_password_hash(password)
+        self.password_hash = password_hasher.hash(password)
 
     def check_password(self, password):
-        return check_password_hash(self.password_hash, password)
+        return password_hasher.verify(self.password_hash, password)
 
 class CodeSubmission(db.Model):
+    __table_args__ = (
+        # Dashboard listing/stats and per-user dedup lookups
+        db.Index('ix_code_submission_user_success_time', 'user_id', 'is_success', 'timestamp'),
+        db.Index('ix_code_submission_user_hash', 'user_id', 'code_hash'),
+    )
+
     id = db.Column(db.Integer, primary_key=True)
     user_id = db.Column(db.Integer, db.ForeignKey('user.id'), nullable=False)
-    code_content = db.Column(db.Text, nullable=False)
+    # Large text columns are only loaded (together) when one of them is accessed
+    code_content = deferred(db.Column(db.Text, nullable=False), group='content')
     submission_name = db.Column(db.String(120), nullable=False)
     timestamp = db.Column(db.DateTime, default=lambda: datetime.now(timezone.utc))
     is_success = db.Column(db.Boolean, default=True, nullable=False)
+    ast_content = deferred(db.Column(db.Text), group='content')
+    comments_content = deferred(db.Column(db.Text), group='content')
+    code_hash = db.Column(db.String(64))
+    cfg_image = db.Column(db.String(255))
+    # Shared analysis outputs; ast_content/comments_content are only set on rows stored before artifacts existed
+    artifact_id = db.Column(db.Integer, db.ForeignKey('artifact.id'), index=True)
+
+    # Code metrics computed together with the AST (NULL for rows stored before metrics existed)
+    loc = db.Column(db.Integer, index=True)
+    class_count = db.Column(db.Integer)
+    method_count = db.Column(db.Integer, index=True)
+    max_complexity = db.Column(db.Integer, index=True)
+    avg_complexity = db.Column(db.Float)
+    max_nesting = db.Column(db.Integer)
+
+    method_metrics = relationship("MethodMetric", backref="submission", cascade="all, delete-orphan")
+    artifact = relationship("Artifact")
+
+    def get_ast(self):
+        return self.artifact.ast_content if self.artifact else self.ast_content
+
+    def get_comments(self):
+        return self.artifact.comments_content if self.artifact else self.comments_content
+
+    def metrics_summary(self):
+        return {
+            'loc': self.loc,
+            'class_count': self.class_count,
+            'method_count': self.method_count,
+            'max_complexity': self.max_complexity,
+            'avg_complexity': self.avg_complexity,
+            'max_nesting': self.max_nesting
+        }
+
+class Artifact(db.Model):
+    """Analysis outputs for one code hash and model version, shared by every submission of that code"""
+    __table_args__ = (db.UniqueConstraint('code_hash', 'model_version'),)
+
+    id = db.Column(db.Integer, primary_key=True)
+    code_hash = db.Column(db.String(64), nullable=False)
+    model_version = db.Column(db.String(120), nullable=False)
     ast_content = db.Column(db.Text)
     comments_content = db.Column(db.Text)
-    code_hash = db.Column(db.String(64))
-    cfg_image = db.Column(db.String(255))
\ No newline at end of file
+    relationships_content = db.Column(db.Text)  # JSON from detect_relationships
+    metrics_content = db.Column(db.Text)  # JSON from format_ast(metrics=...)
+    created_at = db.Column(db.DateTime, default=lambda: datetime.now(timezone.utc))
+
+    def relationships(self):
+        return json.loads(self.relationships_content) if self.relationships_content else {}
+
+    def metrics(self):
+        return json.loads(self.metrics_content) if self.metrics_content else {}
+
+class MethodMetric(db.Model):
+    id = db.Column(db.Integer, primary_key=True)
+    submission_id = db.Column(db.Integer, db.ForeignKey('code_submission.id'), nullable=False, index=True)
+    class_name = db.Column(db.String(120), nullable=False)
+    method_name = db.Column(db.String(120), nullable=False)
+    line = db.Column(db.Integer)
+    complexity = db.Column(db.Integer, nullable=False, index=True)
+    nesting_depth = db.Column(db.Integer, nullable=False)
+    loc = db.Column(db.Integer, nullable=False)
+    param_count = db.Column(db.Integer, nullable=False)
\ No newline at end of file
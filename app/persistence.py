@@ -0,0 +1,212 @@
+# app/persistence.py
+"""
+Submission persistence.
+
+In "sync" mode (the default) records are committed on the request thread, so a
+submission is readable as soon as the response is sent. In "write_behind" mode
+(opt-in) request handlers enqueue plain submission records and return; a
+background thread drains the bounded queue and commits records in batches, so a
+response no longer waits for the database fsync and the commit cost is shared by
+many rows. Until a batch is flushed (up to PERSISTENCE_FLUSH_INTERVAL) queued
+submissions don't show up in queries such as the dashboard; resubmitting the same
+code in that window is not queued twice. When the queue is full, records are
+committed on the request thread. Pending records are flushed when the process exits.
+
+A record is a dict with the CodeSubmission columns (user_id, code_content,
+submission_name, code_hash, is_success), the metrics dict from format_ast,
+and either artifact_id (existing artifact) or artifact (fields of a new one).
+"""
+import atexit
+import queue
+import threading
+from collections import Counter
+from flask import current_app
+from sqlalchemy.exc import IntegrityError
+from . import db
+from .models import CodeSubmission, MethodMetric, Artifact
+from .metrics import stage
+
+SYNC = "sync"
+WRITE_BEHIND = "write_behind"
+
+
+def _resolve_artifact(record, artifact_cache):
+    """Return the Artifact a record references, reusing one stored (or pending) for the same key"""
+    if record.get('artifact_id'):
+        return db.session.get(Artifact, record['artifact_id'])
+    fields = record.get('artifact')
+    if not fields:
+        return None
+    key = (fields['code_hash'], fields['model_version'])
+    if key not in artifact_cache:
+        artifact_cache[key] = Artifact.query.filter_by(
+            code_hash=fields['code_hash'], model_version=fields['model_version']
+        ).first() or Artifact(**fields)
+    return artifact_cache[key]
+
+
+def build_submission(record, artifact_cache=None):
+    """Create the CodeSubmission (with its method metrics) for a record"""
+    metrics = record.get('metrics') or {}
+    return CodeSubmission(
+        user_id=record['user_id'],
+        code_content=record['code_content'],
+        submission_name=record['submission_name'],
+        code_hash=record.get('code_hash'),
+        artifact=_resolve_artifact(record, {} if artifact_cache is None else artifact_cache),
+        is_success=record.get('is_success', True),
+        loc=metrics.get('loc'),
+        class_count=metrics.get('class_count'),
+        method_count=metrics.get('method_count'),
+        max_complexity=metrics.get('max_complexity'),
+        avg_complexity=metrics.get('avg_complexity'),
+        max_nesting=metrics.get('max_nesting'),
+        method_metrics=[
+            MethodMetric(
+                class_name=m['class'],
+                method_name=m['name'],
+                line=m['line'],
+                complexity=m['complexity'],
+                nesting_depth=m['nesting_depth'],
+                loc=m['loc'],
+                param_count=m['param_count']
+            ) for m in metrics.get('methods', [])
+        ]
+    )
+
+
+def write_submission(record):
+    """Commit one record on the calling thread (needs an app context)"""
+    db.session.add(build_submission(record))
+    try:
+        with stage('db_commit', rows=1):
+            db.session.commit()
+    except IntegrityError:
+        # Another writer stored the same artifact first; the retry picks that one up
+        db.session.rollback()
+        db.session.add(build_submission(record))
+        with stage('db_commit', rows=1, retry=True):
+            db.session.commit()
+
+
+class SubmissionWriter:
+    """Background thread committing queued submission records in batched transactions"""
+
+    def __init__(self, app, max_queue=1000, batch_size=50, flush_interval=0.5):
+        self.app = app
+        self.queue = queue.Queue(maxsize=max_queue)
+        self.batch_size = batch_size
+        self.flush_interval = flush_interval
+        self._stopping = threading.Event()
+        self._pending = Counter()  # (user_id, code_hash) of queued successful submissions
+        self._pending_lock = threading.Lock()
+        self._thread = threading.Thread(target=self._run, name="submission-writer", daemon=True)
+
+    def start(self):
+        self._thread.start()
+
+    @staticmethod
+    def _pending_key(record):
+        if record.get('is_success', True) and record.get('code_hash'):
+            return (record['user_id'], record['code_hash'])
+        return None
+
+    def submit(self, record):
+        """Queue a record; returns False if the queue is full"""
+        if self._stopping.is_set():
+            return False
+        key = self._pending_key(record)
+        with self._pending_lock:
+            if key is not None and self._pending[key]:
+                return True  # Same code from the same user is already queued; the dedup query can't see it yet
+            try:
+                self.queue.put_nowait(record)
+            except queue.Full:
+                return False
+            if key is not None:
+                self._pending[key] += 1
+        return True
+
+    def _written(self, batch):
+        with self._pending_lock:
+            for record in batch:
+                key = self._pending_key(record)
+                if key is not None:
+                    self._pending[key] -= 1
+                    if self._pending[key] <= 0:
+                        del self._pending[key]
+
+    def flush(self):
+        """Block until every queued record has been written"""
+        self.queue.join()
+
+    def stop(self):
+        """Write pending records and stop the thread"""
+        if not self._thread.is_alive():
+            return
+        self._stopping.set()
+        self._thread.join()
+
+    def _run(self):
+        while True:
+            try:
+                batch = [self.queue.get(timeout=self.flush_interval)]
+            except queue.Empty:
+                if self._stopping.is_set():
+                    return
+                continue
+            while len(batch) < self.batch_size:
+                try:
+                    batch.append(self.queue.get_nowait())
+                except queue.Empty:
+                    break
+            try:
+                self._write_batch(batch)
+            finally:
+                self._written(batch)
+                for _ in batch:
+                    self.queue.task_done()
+
+    def _write_batch(self, batch):
+        with self.app.app_context():
+            try:
+                artifact_cache = {}
+                for record in batch:
+                    db.session.add(build_submission(record, artifact_cache))
+                with stage('db_commit', rows=len(batch)):
+                    db.session.commit()
+                return
+            except Exception as e:
+                db.session.rollback()
+                self.app.logger.error(f"Batched submission write failed, retrying rows one by one: {e}")
+            # Isolate the failing record(s) so the rest of the batch is still stored
+            for record in batch:
+                try:
+                    write_submission(record)
+                except Exception as e:
+                    db.session.rollback()
+                    self.app.logger.error(f"Dropping submission '{record.get('submission_name')}': {e}")
+
+
+def save_submission(record):
+    """Persist a submission record according to PERSISTENCE_MODE"""
+    writer = current_app.extensions.get('submission_writer')
+    if writer is not None and writer.submit(record):
+        return
+    # Sync mode, or back-pressure when the queue is full: commit on the request thread
+    write_submission(record)
+
+
+def init_persistence(app):
+    """Start the background writer when PERSISTENCE_MODE is write_behind"""
+    if app.config.get('PERSISTENCE_MODE', SYNC) != WRITE_BEHIND:
+        return
+    writer = SubmissionWriter(
+        app,
+        max_queue=app.config.get('PERSISTENCE_QUEUE_SIZE', 1000),
+        batch_size=app.config.get('PERSISTENCE_BATCH_SIZE', 50),
+        flush_interval=app.config.get('PERSISTENCE_FLUSH_INTERVAL', 0.5)
+    )
+    writer.start()
+    app.extensions['submission_writer'] = writer
+    atexit.register(writer.stop)
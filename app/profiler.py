@@ -0,0 +1,136 @@
+# app/profiler.py
+"""
+On-demand profiling of single analysis requests.
+
+An admin (a user id listed in PROFILER_ADMIN_IDS) adds ?profile=1 (or the header
+"X-Profile: 1") to a request to /, /ast-json or /generate-cfg. That request's
+thread is then sampled every PROFILER_INTERVAL_MS and the samples are written
+to PROFILE_DIR in collapsed-stack format ("frame;frame;frame count" per line),
+ready for flamegraph.pl or speedscope. The normal response is returned with an
+X-Profile-Id header; the stacks are served by /api/profiles/<id>. Work handed to
+thread or process pools shows up as the request thread waiting on them.
+
+Without the flag, the wrapped views only check the query string and headers
+before running. Admins are matched by user id, not username: a username that
+isn't registered yet could be claimed by anyone through /auth/signup.
+"""
+import functools
+import os
+import re
+import sys
+import threading
+import time
+import uuid
+from collections import Counter
+from flask import abort, current_app, request, send_from_directory
+from flask_login import current_user, login_required
+from .request_log import annotate
+
+PROFILED_ENDPOINTS = ('main.home', 'main.ast_json', 'main.generate_cfg')
+PROFILE_ID = re.compile(r'^[0-9a-f]{32}$')
+
+
+class StackSampler:
+    """Samples one thread's Python stack from a background thread"""
+
+    def __init__(self, thread_id, interval, root_code=None):
+        self.thread_id = thread_id
+        self.interval = interval
+        self.root_code = root_code  # Frames above this code object (server, Flask dispatch) are dropped
+        self.samples = Counter()
+        self._stop = threading.Event()
+        self._thread = threading.Thread(target=self._run, name='request-profiler', daemon=True)
+
+    def start(self):
+        self._thread.start()
+
+    def stop(self):
+        self._stop.set()
+        self._thread.join()
+
+    def _run(self):
+        while not self._stop.wait(self.interval):
+            frame = sys._current_frames().get(self.thread_id)
+            stack = []
+            while frame is not None and frame.f_code is not self.root_code:
+                code = frame.f_code
+                stack.append(f"{code.co_name} ({os.path.basename(code.co_filename)}:{code.co_firstlineno})")
+                frame = frame.f_back
+            if stack:
+                self.samples[';'.join(reversed(stack))] += 1
+
+    def collapsed(self):
+        return ''.join(f"{stack} {count}\n" for stack, count in self.samples.most_common())
+
+
+def is_profiler_admin(user):
+    return user.is_authenticated and user.id in current_app.config.get('PROFILER_ADMIN_IDS', ())
+
+
+def profiling_requested():
+    """True when an admin asked for this request to be profiled"""
+    if request.args.get('profile') != '1' and request.headers.get('X-Profile') != '1':
+        return False
+    return current_app.config.get('PROFILER_ENABLED', True) and is_profiler_admin(current_user)
+
+
+def _prune(directory, keep):
+    # Concurrent profiled requests prune the same directory; a file another one removed first is skipped
+    files = []
+    for entry in os.scandir(directory):
+        if entry.name.endswith('.collapsed'):
+            try:
+                files.append((entry.stat().st_mtime, entry.path))
+            except FileNotFoundError:
+                pass
+    files.sort()
+    for _, path in files[:max(0, len(files) - keep)]:
+        try:
+            os.remove(path)
+        except FileNotFoundError:
+            pass
+
+
+def _profiled(view):
+    @functools.wraps(view)
+    def wrapper(*args, **kwargs):
+        if not profiling_requested():
+            return view(*args, **kwargs)
+
+        sampler = StackSampler(threading.get_ident(), current_app.config.get('PROFILER_INTERVAL_MS', 1) / 1000,
+                               root_code=wrapper.__code__)
+        start = time.perf_counter()
+        sampler.start()
+        try:
+            response = current_app.make_response(view(*args, **kwargs))
+        finally:
+            sampler.stop()
+        elapsed_ms = (time.perf_counter() - start) * 1000
+
+        profile_id = uuid.uuid4().hex
+        directory = current_app.config['PROFILE_DIR']
+        os.makedirs(directory, exist_ok=True)
+        with open(os.path.join(directory, f"{profile_id}.collapsed"), 'w', encoding='utf-8') as f:
+            f.write(sampler.collapsed())
+        _prune(directory, current_app.config.get('PROFILE_KEEP', 200))
+
+        annotate(profile_id=profile_id, profile_wall_ms=round(elapsed_ms, 1),
+                 profile_samples=sum(sampler.samples.values()))
+        response.headers['X-Profile-Id'] = profile_id
+        return response
+    return wrapper
+
+
+def init_profiler(app):
+    """Wrap the analysis views and register the profile download endpoint"""
+    for endpoint in PROFILED_ENDPOINTS:
+        if endpoint in app.view_functions:
+            app.view_functions[endpoint] = _profiled(app.view_functions[endpoint])
+
+    @app.route('/api/profiles/<profile_id>')
+    @login_required
+    def download_profile(profile_id):
+        if not PROFILE_ID.match(profile_id) or not is_profiler_admin(current_user):
+            abort(404)
+        return send_from_directory(app.config['PROFILE_DIR'], f"{profile_id}.collapsed",
+                                   mimetype='text/plain', as_attachment=False)
@@ -0,0 +1,88 @@
+# app/request_log.py
+"""
+Per-request stage breakdown for the analysis routes.
+
+Responses from the routes in TIMED_ROUTES carry a Server-Timing header with the
+exclusive time of the parse, extract, infer, render and db stages (collected by
+metrics.stage) plus the total, so browser devtools show which stage regressed.
+The same breakdown is written as one JSON line per request to the
+"clarifai.requests" logger, together with code size, class/method counts and
+the cache outcome that handlers record with annotate().
+"""
+import json
+import logging
+import time
+from flask import g, has_request_context, request
+
+TIMED_ROUTES = {'/', '/ast-json', '/generate-cfg', '/process-folder'}
+
+# Server-Timing metric name for each pipeline stage
+STAGE_GROUPS = {
+    'parse': 'parse',
+    'extract_classes': 'extract',
+    'extract_methods': 'extract',
+    'infer': 'infer',
+    'render': 'render',
+    'db_commit': 'db'
+}
+SERVER_TIMING_ORDER = ('parse', 'extract', 'infer', 'render', 'db')
+
+logger = logging.getLogger('clarifai.requests')
+
+
+def annotate(**fields):
+    """Attach fields (e.g. classes, methods, cache) to the current request's log line"""
+    if has_request_context():
+        g.setdefault('request_log', {}).update(fields)
+
+
+def stage_breakdown():
+    """Milliseconds per Server-Timing group for the current request"""
+    groups = {}
+    for name, seconds in g.get('stage_timings', {}).items():
+        group = STAGE_GROUPS.get(name, name)
+        groups[group] = groups.get(group, 0.0) + seconds * 1000
+    return groups
+
+
+def _code_size():
+    if request.is_json:
+        code = (request.get_json(silent=True) or {}).get('code')
+        return len(code.encode('utf-8')) if isinstance(code, str) else 0
+    return request.content_length or 0
+
+
+def init_request_log(app):
+    """Add Server-Timing headers and JSON log lines for TIMED_ROUTES"""
+    if not logger.handlers:
+        handler = logging.StreamHandler()
+        handler.setFormatter(logging.Formatter('%(message)s'))
+        logger.addHandler(handler)
+        logger.setLevel(logging.INFO)
+        logger.propagate = False
+
+    @app.after_request
+    def _add_stage_timings(response):
+        rule = request.url_rule.rule if request.url_rule else None
+        if rule not in TIMED_ROUTES or request.method != 'POST':
+            return response
+        start = g.get('request_start')
+        total_ms = (time.perf_counter() - start) * 1000 if start is not None else None
+        groups = stage_breakdown()
+
+        timings = [f'{name};dur={groups.get(name, 0.0):.1f}' for name in SERVER_TIMING_ORDER]
+        timings += [f'{name};dur={ms:.1f}' for name, ms in groups.items() if name not in SERVER_TIMING_ORDER]
+        if total_ms is not None:
+            timings.append(f'total;dur={total_ms:.1f}')
+        response.headers['Server-Timing'] = ', '.join(timings)
+
+        entry = {
+            'route': rule,
+            'status': response.status_code,
+            'total_ms': round(total_ms, 1) if total_ms is not None else None,
+            'stages_ms': {name: round(ms, 1) for name, ms in groups.items()},
+            'code_bytes': _code_size()
+        }
+        entry.update(g.get('request_log', {}))
+        logger.info(json.dumps(entry, default=str))
+        return response
@@ -0,0 +1,82 @@
+# app/storage.py
+"""
+Storage tier configuration.
+
+SQLite connections get WAL journaling, synchronous=NORMAL, a memory-mapped read
+window and a busy timeout, so concurrent submission commits wait for the write
+lock instead of failing with "database is locked". PostgreSQL (DATABASE_URL
+starting with postgresql://) gets a pre-pinged, recycled connection pool.
+In both cases the pool is sized per worker process from a total connection budget.
+SQLITE_TUNED = False leaves SQLite at SQLAlchemy's defaults (no pragmas, pool or
+connect arguments).
+"""
+from sqlalchemy import event
+from sqlalchemy.engine import make_url
+
+
+def is_sqlite(uri):
+    return make_url(uri).get_backend_name() == 'sqlite'
+
+
+def pool_size_per_worker(config):
+    """Split the total connection budget (DB_MAX_CONNECTIONS) across WEB_CONCURRENCY worker processes"""
+    workers = max(1, config.get('WEB_CONCURRENCY', 1))
+    return max(1, config.get('DB_MAX_CONNECTIONS', 10) // workers)
+
+
+def engine_options(config):
+    """SQLALCHEMY_ENGINE_OPTIONS for the configured database"""
+    uri = config['SQLALCHEMY_DATABASE_URI']
+    pool_size = pool_size_per_worker(config)
+    if is_sqlite(uri):
+        if not config.get('SQLITE_TUNED', True):
+            return {}  # Untuned: SQLAlchemy's own SQLite defaults
+        options = {
+            'connect_args': {
+                # Python-level wait for the write lock, in seconds (busy_timeout is also set below)
+                'timeout': config.get('SQLITE_BUSY_TIMEOUT_MS', 5000) / 1000,
+                'check_same_thread': False
+            }
+        }
+        if make_url(uri).database not in (None, '', ':memory:'):
+            # File databases can use a regular pool; in-memory ones keep SQLAlchemy's default
+            options.update(pool_size=pool_size, max_overflow=0, pool_timeout=config.get('DB_POOL_TIMEOUT', 30))
+        return options
+    return {
+        'pool_size': pool_size,
+        'max_overflow': config.get('DB_MAX_OVERFLOW', 5),
+        'pool_timeout': config.get('DB_POOL_TIMEOUT', 30),
+        'pool_recycle': config.get('DB_POOL_RECYCLE', 1800),
+        'pool_pre_ping': True
+    }
+
+
+def sqlite_pragmas(config):
+    """PRAGMA statements run on every new SQLite connection"""
+    return [
+        'PRAGMA journal_mode=WAL',
+        f"PRAGMA synchronous={config.get('SQLITE_SYNCHRONOUS', 'NORMAL')}",
+        f"PRAGMA mmap_size={int(config.get('SQLITE_MMAP_SIZE', 268435456))}",
+        f"PRAGMA busy_timeout={int(config.get('SQLITE_BUSY_TIMEOUT_MS', 5000))}"
+    ]
+
+
+def configure_storage(app):
+    """Set engine options before db.init_app(app); user-provided options take precedence"""
+    options = engine_options(app.config)
+    options.update(app.config.get('SQLALCHEMY_ENGINE_OPTIONS') or {})
+    app.config['SQLALCHEMY_ENGINE_OPTIONS'] = options
+
+
+def init_storage(app, db):
+    """Register per-connection setup on the app's engine (call inside an app context, before first use)"""
+    if not is_sqlite(app.config['SQLALCHEMY_DATABASE_URI']) or not app.config.get('SQLITE_TUNED', True):
+        return
+    pragmas = sqlite_pragmas(app.config)
+
+    @event.listens_for(db.engine, 'connect')
+    def _apply_sqlite_pragmas(dbapi_connection, connection_record):
+        cursor = dbapi_connection.cursor()
+        for pragma in pragmas:
+            cursor.execute(pragma)
+        cursor.close()
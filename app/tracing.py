@@ -0,0 +1,311 @@
+# app/tracing.py
+"""
+Lightweight OpenTelemetry-style tracing.
+
+Each request gets a root span; nested spans are opened by span() and by every
+metrics.stage() (parse, extract_*, infer, render, db_commit), so a slow request
+becomes a tree showing which nested call took the time. Spans carry attributes
+such as code size, method counts and batch size. The current span is tracked in
+a contextvar; work handed to thread pools joins the request's trace when the
+callable is wrapped with bind().
+
+When a root span ends, its finished trace is queued to the configured exporters
+(TRACE_EXPORTERS): "json" appends one JSON line per trace to TRACE_JSON_PATH,
+"otlp" posts OTLP/HTTP JSON to TRACE_OTLP_ENDPOINT (e.g. a local collector on
+port 4318). Traces faster than TRACE_MIN_DURATION_MS are dropped. With no
+exporters configured, span() returns a shared no-op span.
+"""
+import atexit
+import contextvars
+import functools
+import json
+import os
+import queue
+import threading
+import time
+import urllib.request
+from contextlib import contextmanager
+from flask import g, request
+
+_current_span = contextvars.ContextVar('current_span', default=None)
+
+
+class Span:
+    def __init__(self, name, trace, parent=None, kind='internal', attributes=None):
+        self.name = name
+        self.trace = trace
+        self.span_id = os.urandom(8).hex()
+        self.parent_id = parent.span_id if parent else None
+        self.kind = kind
+        self.attributes = dict(attributes or {})
+        self.start_ns = time.time_ns()
+        self.end_ns = None
+        self.error = None
+
+    def set_attribute(self, key, value):
+        self.attributes[key] = value
+
+    def set_attributes(self, **attributes):
+        self.attributes.update(attributes)
+
+    def record_error(self, error):
+        self.error = f"{type(error).__name__}: {error}"
+
+    @property
+    def duration_ms(self):
+        return (self.end_ns - self.start_ns) / 1e6 if self.end_ns else None
+
+    def to_dict(self):
+        return {
+            'trace_id': self.trace.trace_id,
+            'span_id': self.span_id,
+            'parent_id': self.parent_id,
+            'name': self.name,
+            'kind': self.kind,
+            'start_ns': self.start_ns,
+            'end_ns': self.end_ns,
+            'duration_ms': round(self.duration_ms, 3) if self.end_ns else None,
+            'attributes': self.attributes,
+            'error': self.error
+        }
+
+
+class _NoopSpan:
+    def set_attribute(self, key, value):
+        pass
+
+    def set_attributes(self, **attributes):
+        pass
+
+    def record_error(self, error):
+        pass
+
+
+NOOP_SPAN = _NoopSpan()
+
+
+class _Trace:
+    """Finished spans of one trace, collected until the root span ends"""
+
+    def __init__(self):
+        self.trace_id = os.urandom(16).hex()
+        self.spans = []
+        self.lock = threading.Lock()
+
+
+class JsonFileExporter:
+    """One JSON line per trace: {"trace_id", "root", "duration_ms", "spans": [...]}"""
+
+    def __init__(self, path):
+        self.path = path
+
+    def export(self, root, spans):
+        directory = os.path.dirname(os.path.abspath(self.path))
+        os.makedirs(directory, exist_ok=True)
+        line = json.dumps({
+            'trace_id': root.trace.trace_id,
+            'root': root.name,
+            'duration_ms': round(root.duration_ms, 3),
+            'spans': [span.to_dict() for span in spans]
+        }, default=str)
+        with open(self.path, 'a', encoding='utf-8') as f:
+            f.write(line + '\n')
+
+
+def _otlp_value(value):
+    if isinstance(value, bool):
+        return {'boolValue': value}
+    if isinstance(value, int):
+        return {'intValue': str(value)}
+    if isinstance(value, float):
+        return {'doubleValue': value}
+    return {'stringValue': str(value)}
+
+
+class OtlpHttpExporter:
+    """Posts traces to an OTLP/HTTP collector using the JSON encoding"""
+
+    KINDS = {'internal': 1, 'server': 2}
+
+    def __init__(self, endpoint, service_name, timeout=5):
+        self.endpoint = endpoint
+        self.service_name = service_name
+        self.timeout = timeout
+
+    def export(self, root, spans):
+        payload = {'resourceSpans': [{
+            'resource': {'attributes': [{'key': 'service.name', 'value': {'stringValue': self.service_name}}]},
+            'scopeSpans': [{
+                'scope': {'name': 'app.tracing'},
+                'spans': [{
+                    'traceId': span.trace.trace_id,
+                    'spanId': span.span_id,
+                    'parentSpanId': span.parent_id or '',
+                    'name': span.name,
+                    'kind': self.KINDS.get(span.kind, 1),
+                    'startTimeUnixNano': str(span.start_ns),
+                    'endTimeUnixNano': str(span.end_ns),
+                    'attributes': [{'key': key, 'value': _otlp_value(value)} for key, value in span.attributes.items()],
+                    'status': {'code': 2, 'message': span.error} if span.error else {'code': 1}
+                } for span in spans]
+            }]
+        }]}
+        req = urllib.request.Request(self.endpoint, data=json.dumps(payload).encode('utf-8'),
+                                     headers={'Content-Type': 'application/json'}, method='POST')
+        with urllib.request.urlopen(req, timeout=self.timeout) as response:
+            response.read()
+
+
+class Tracer:
+    """Creates spans and hands finished traces to the exporters on a background thread"""
+
+    def __init__(self):
+        self.exporters = []
+        self.min_duration_ms = 0
+        self.queue = None
+        self.dropped = 0
+        self._thread = None
+
+    @property
+    def enabled(self):
+        return bool(self.exporters)
+
+    def configure(self, exporters, min_duration_ms=0, max_queue=1000):
+        self.exporters = list(exporters)
+        self.min_duration_ms = min_duration_ms
+        if self.exporters and self._thread is None:
+            self.queue = queue.Queue(maxsize=max_queue)
+            self._thread = threading.Thread(target=self._run, name='trace-exporter', daemon=True)
+            self._thread.start()
+            atexit.register(self.flush)
+
+    def flush(self):
+        """Block until queued traces are exported"""
+        if self._thread is not None:
+            self.queue.join()
+
+    def start_span(self, name, kind='internal', **attributes):
+        parent = _current_span.get()
+        trace = parent.trace if parent is not None else _Trace()
+        return Span(name, trace, parent, kind, attributes)
+
+    def end_span(self, span):
+        span.end_ns = time.time_ns()
+        with span.trace.lock:
+            span.trace.spans.append(span)
+        if span.parent_id is None and span.duration_ms >= self.min_duration_ms:
+            try:
+                self.queue.put_nowait((span, list(span.trace.spans)))
+            except queue.Full:
+                self.dropped += 1  # Exporting must never slow requests down
+
+    def _run(self):
+        while True:
+            root, spans = self.queue.get()
+            try:
+                for exporter in self.exporters:
+                    try:
+                        exporter.export(root, spans)
+                    except Exception as e:
+                        print(f"Trace export to {type(exporter).__name__} failed: {e}")
+            finally:
+                self.queue.task_done()
+
+
+tracer = Tracer()
+
+
+@contextmanager
+def span(name, kind='internal', **attributes):
+    """Open a child of the current span (or a new trace); yields it so callers can add attributes"""
+    if not tracer.enabled:
+        yield NOOP_SPAN
+        return
+    current = tracer.start_span(name, kind, **attributes)
+    token = _current_span.set(current)
+    try:
+        yield current
+    except BaseException as e:
+        current.record_error(e)
+        raise
+    finally:
+        _current_span.reset(token)
+        tracer.end_span(current)
+
+
+def current_span():
+    return _current_span.get() or NOOP_SPAN
+
+
+def bind(fn):
+    """
+    Wrap fn so that, run on another thread, its spans are children of the span
+    current here. Only the span is carried over (not the Flask request context).
+    """
+    parent = _current_span.get()
+
+    @functools.wraps(fn)
+    def wrapper(*args, **kwargs):
+        token = _current_span.set(parent)
+        try:
+            return fn(*args, **kwargs)
+        finally:
+            _current_span.reset(token)
+    return wrapper
+
+
+def traced(name):
+    """Decorator form of span()"""
+    def decorator(fn):
+        @functools.wraps(fn)
+        def wrapper(*args, **kwargs):
+            with span(name):
+                return fn(*args, **kwargs)
+        return wrapper
+    return decorator
+
+
+def init_tracing(app):
+    """Configure exporters from TRACE_EXPORTERS and open a root span per request"""
+    exporters = []
+    for name in app.config.get('TRACE_EXPORTERS', ()):
+        if name == 'json':
+            exporters.append(JsonFileExporter(app.config['TRACE_JSON_PATH']))
+        elif name == 'otlp':
+            exporters.append(OtlpHttpExporter(app.config['TRACE_OTLP_ENDPOINT'],
+                                              app.config.get('TRACE_SERVICE_NAME', 'clarifai')))
+        else:
+            app.logger.warning(f"Unknown trace exporter '{name}' ignored")
+    tracer.configure(exporters, app.config.get('TRACE_MIN_DURATION_MS', 0))
+    if not tracer.enabled:
+        return
+
+    @app.before_request
+    def _start_request_span():
+        root = tracer.start_span(f"{request.method} {request.path}", kind='server',
+                                 **{'http.method': request.method, 'http.target': request.path,
+                                    'http.request_content_length': request.content_length or 0})
+        g.trace_span = root
+        g.trace_token = _current_span.set(root)
+
+    @app.after_request
+    def _annotate_request_span(response):
+        root = g.get('trace_span')
+        if root is not None:
+            root.set_attributes(**{'http.route': request.url_rule.rule if request.url_rule else '',
+                                   'http.status_code': response.status_code})
+            response.headers['X-Trace-Id'] = root.trace.trace_id
+        return response
+
+    @app.teardown_request
+    def _end_request_span(error=None):
+        root = g.pop('trace_span', None)
+        if root is None:
+            return
+        if error is not None:
+            root.record_error(error)
+        try:
+            _current_span.reset(g.pop('trace_token'))
+        except ValueError:
+            _current_span.set(None)  # Teardown ran in a different context than before_request
+        tracer.end_span(root)
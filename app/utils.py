@@ -3,6 +3,24 @@ import javalang
 import hashlib
 from concurrent.futures import ThreadPoolExecutor, as_completed
 from flask import current_app # To access app.hf_pipeline
+from .metrics import stage, timed_stage, record_fallback
+from .tracing import traced, current_span
+from .request_log import annotate
+
+def parse_java(java_code: str):
+    """javalang.parse.parse, timed as the "parse" stage"""
+    with stage('parse', code_bytes=len(java_code)):
+        return javalang.parse.parse(java_code)
+
+
+def _structure_attributes(java_code, result):
+    """Span attributes for extract_classes / extract_methods results"""
+    attributes = {'code_bytes': len(java_code), 'classes': len(result) if 'error' not in result else 0}
+    methods = [value for value in result.values() if isinstance(value, list)]
+    if methods:
+        attributes['methods'] = sum(len(value) for value in methods)
+    return attributes
+
 
 def preprocess_code(code: str) -> str:
     # ... (your preprocess_code function)
@@ -15,11 +33,13 @@ def preprocess_code(code: str) -> str:
     )
 
 
+@traced('wrap_code_if_needed')
 def wrap_code_if_needed(java_code: str) -> tuple[str, bool]:
     """
     Wrap Java code in a class if it doesn't have one.
     Returns: (wrapped_code, was_wrapped)
     """
+    current_span().set_attribute('code_bytes', len(java_code))
     stripped = java_code.strip()
     
     # Check if code already starts with a class declaration
@@ -33,7 +53,7 @@ def wrap_code_if_needed(java_code: str) -> tuple[str, bool]:
     
     # Try parsing as-is first
     try:
-        javalang.parse.parse(java_code)
+        parse_java(java_code)
         return java_code, False
     except javalang.parser.JavaSyntaxError as e:
         # Check if error is "expected type declaration" at line 1
@@ -55,7 +75,7 @@ def wrap_code_if_needed(java_code: str) -> tuple[str, bool]:
             try:
                 wrapped_code = f"public class nan {{\n{java_code}\n}}"
                 # Verify the wrapped code parses correctly
-                javalang.parse.parse(wrapped_code)
+                parse_java(wrapped_code)
                 return wrapped_code, True
             except:
                 pass
@@ -63,7 +83,7 @@ def wrap_code_if_needed(java_code: str) -> tuple[str, bool]:
         # For other errors, still try wrapping if it doesn't start with class
         try:
             wrapped_code = f"public class nan {{\n{java_code}\n}}"
-            javalang.parse.parse(wrapped_code)
+            parse_java(wrapped_code)
             return wrapped_code, True
         except:
             pass
@@ -72,13 +92,19 @@ def wrap_code_if_needed(java_code: str) -> tuple[str, bool]:
         return java_code, False
 
 
-def format_ast(java_code: str) -> str: #
-    # ... (your format_ast function)
-    # Make sure to handle imports like javalang at the top of this file
+def format_ast(java_code: str, metrics: dict = None) -> str: #
+    """
+    Render the AST tree HTML.
+    If a metrics dict is passed, it is filled with code metrics (see compute_method_metrics)
+    during the same pass over the parsed classes, so no second parse is needed.
+    """
     try:
         # Wrap code in class if needed
         wrapped_code, was_wrapped = wrap_code_if_needed(java_code)
-        tree = javalang.parse.parse(wrapped_code)
+        tree = parse_java(wrapped_code)
+        line_offset = 1 if was_wrapped else 0
+        if metrics is not None:
+            metrics.update({'classes': [], 'methods': []})
         
         # First pass: collect all classes and their inheritance relationships
         class_nodes_map = {}
@@ -89,6 +115,8 @@ def format_ast(java_code: str) -> str: #
         for _, class_node in tree.filter(javalang.tree.ClassDeclaration):
             class_name = class_node.name
             class_nodes_map[class_name] = class_node
+            if metrics is not None:
+                _collect_class_metrics(class_node, line_offset, metrics)
             
             # Check if class extends another class
             if hasattr(class_node, 'extends') and class_node.extends:
@@ -211,6 +239,8 @@ def format_ast(java_code: str) -> str: #
             render_class_recursive(root_class, 0)
 
         output.append('</div>')
+        if metrics is not None:
+            _summarize_metrics(java_code, metrics)
         return '\n'.join(output)
 
     except javalang.parser.JavaSyntaxError as e:
@@ -223,6 +253,108 @@ def format_ast(java_code: str) -> str: #
         return f'<div class="ast-error">Java Syntax Error (Line {line_number}): {e.description}</div>'
 
 
+# Nodes that add a decision point (cyclomatic complexity) or a nesting level
+DECISION_NODES = (
+    javalang.tree.IfStatement, javalang.tree.WhileStatement, javalang.tree.ForStatement,
+    javalang.tree.DoStatement, javalang.tree.CatchClause, javalang.tree.TernaryExpression
+)
+NESTING_NODES = (
+    javalang.tree.IfStatement, javalang.tree.WhileStatement, javalang.tree.ForStatement,
+    javalang.tree.DoStatement, javalang.tree.SwitchStatement, javalang.tree.TryStatement
+)
+
+
+def _child_nodes(node):
+    """Yield the direct AST children of a javalang node (flattening list attributes)"""
+    pending = list(node.children)
+    while pending:
+        child = pending.pop(0)
+        if isinstance(child, javalang.ast.Node):
+            yield child
+        elif isinstance(child, (list, tuple)):
+            pending[0:0] = child
+
+
+def compute_method_metrics(method, line_offset=0) -> dict:
+    """
+    Compute metrics for one method in a single walk of its subtree:
+    cyclomatic complexity (1 + decision points, case labels and &&/||),
+    maximum control-structure nesting depth (else-if chains do not nest),
+    parameter count and LOC (declaration line to last statement line).
+    """
+    complexity = 1
+    max_nesting = 0
+    start_line = method.position.line if method.position else None
+    last_line = start_line or 0
+
+    stack = [(child, 0) for child in _child_nodes(method)]
+    while stack:
+        node, depth = stack.pop()
+        position = getattr(node, 'position', None)
+        if position and position.line > last_line:
+            last_line = position.line
+
+        if isinstance(node, DECISION_NODES):
+            complexity += 1
+        elif isinstance(node, javalang.tree.SwitchStatementCase) and node.case:
+            complexity += len(node.case)
+        elif isinstance(node, javalang.tree.BinaryOperation) and node.operator in ('&&', '||'):
+            complexity += 1
+
+        child_depth = depth
+        if isinstance(node, NESTING_NODES):
+            child_depth = depth + 1
+            max_nesting = max(max_nesting, child_depth)
+
+        for child in _child_nodes(node):
+            if isinstance(node, javalang.tree.IfStatement) and child is node.else_statement \
+                    and isinstance(child, javalang.tree.IfStatement):
+                stack.append((child, depth))
+            else:
+                stack.append((child, child_depth))
+
+    return {
+        'name': method.name,
+        'line': (start_line - line_offset) if start_line else None,
+        'complexity': complexity,
+        'nesting_depth': max_nesting,
+        'loc': (last_line - start_line + 1) if start_line else 0,
+        'param_count': len(method.parameters) if method.parameters else 0
+    }
+
+
+def _collect_class_metrics(class_node, line_offset, metrics):
+    """Add per-method and per-class metrics for one class to the metrics dict"""
+    method_metrics = []
+    for method in class_node.methods:
+        method_data = compute_method_metrics(method, line_offset)
+        method_data['class'] = class_node.name
+        method_metrics.append(method_data)
+    metrics['methods'].extend(method_metrics)
+    metrics['classes'].append({
+        'name': class_node.name,
+        'method_count': len(method_metrics),
+        'field_count': sum(len(field.declarators) for field in class_node.fields),
+        'total_complexity': sum(m['complexity'] for m in method_metrics),
+        'max_complexity': max((m['complexity'] for m in method_metrics), default=0),
+        'loc': sum(m['loc'] for m in method_metrics)
+    })
+
+
+def _summarize_metrics(java_code, metrics):
+    """Add submission-level totals to a metrics dict filled by format_ast"""
+    methods = metrics['methods']
+    metrics.update({
+        'loc': sum(1 for line in java_code.splitlines() if line.strip()),
+        'class_count': len(metrics['classes']),
+        'method_count': len(methods),
+        'max_complexity': max((m['complexity'] for m in methods), default=0),
+        'avg_complexity': round(sum(m['complexity'] for m in methods) / len(methods), 2) if methods else 0.0,
+        'max_nesting': max((m['nesting_depth'] for m in methods), default=0),
+        'max_params': max((m['param_count'] for m in methods), default=0)
+    })
+
+
 def _process_method_body(body): #
     # ... (your _process_method_body function)
     method_vars = []
@@ -278,12 +410,13 @@ def clean_comment(raw_comment: str) -> str: #
     return '. '.join(filtered) + '.' if filtered else "No comment generated"
 
 
+@timed_stage('extract_methods', _structure_attributes)
 def extract_methods(java_code: str) -> dict: #
     # Remember to return jsonify errors or raise custom exceptions to be handled by routes
     try:
         # Wrap code in class if needed
         wrapped_code, was_wrapped = wrap_code_if_needed(java_code)
-        tree = javalang.parse.parse(wrapped_code)
+        tree = parse_java(wrapped_code)
         lines = java_code.splitlines()
         method_map = {}
         
@@ -344,12 +477,13 @@ def extract_methods(java_code: str) -> dict: #
         return {'error': f'Java Syntax Error (Line {line_number}): {e.description}'}
 
 
+@timed_stage('extract_classes', _structure_attributes)
 def extract_classes(java_code: str) -> dict: #
     # ... (your extract_classes function)
     try:
         # Wrap code in class if needed
         wrapped_code, was_wrapped = wrap_code_if_needed(java_code)
-        tree = javalang.parse.parse(wrapped_code)
+        tree = parse_java(wrapped_code)
         lines = java_code.splitlines()
         class_map = {}
         
@@ -418,7 +552,7 @@ def detect_relationships(java_code: str) -> dict:
     
     try:
         wrapped_code, was_wrapped = wrap_code_if_needed(java_code)
-        tree = javalang.parse.parse(wrapped_code)
+        tree = parse_java(wrapped_code)
         
         # Get all class names in the code
         class_names = set()
@@ -554,12 +688,16 @@ def build_ast_json(java_code: str) -> dict:
     try:
         # Wrap code in class if needed
         wrapped_code, was_wrapped = wrap_code_if_needed(java_code)
-        tree = javalang.parse.parse(wrapped_code)
+        tree = parse_java(wrapped_code)
         classes = []
         
         # Extract classes and methods first to generate comments
         class_structure = extract_classes(java_code)
         method_structure = extract_methods(java_code)
+        annotate(
+            classes=sum(1 for class_code in class_structure.values() if isinstance(class_code, str)),
+            methods=sum(len(methods) for methods in method_structure.values() if isinstance(methods, list))
+        )
         
         # Get pipeline reference before processing
         hf_pipeline = current_app.hf_pipeline
@@ -607,6 +745,7 @@ def build_ast_json(java_code: str) -> dict:
                 except Exception as e:
                     # Fallback to sequential if batch fails
                     print(f"Batch processing failed, falling back to sequential: {e}")
+                    record_fallback()
                     for class_name, class_code in class_structure.items():
                         if isinstance(class_code, str):
                             try:
@@ -0,0 +1,47 @@
+# benchmarks/bench_analyzers.py
+"""Time and peak memory of each analyzer on every file in `java test cases`"""
+from app.utils import (
+    wrap_code_if_needed, format_ast, extract_classes, extract_methods, detect_relationships, build_ast_json
+)
+from app.cfg_utils import CFGGenerator
+
+
+def test_wrap_code_if_needed(measured, java_code):
+    measured(wrap_code_if_needed, java_code)
+
+
+def test_format_ast(measured, java_code):
+    measured(format_ast, java_code)
+
+
+def test_extract_classes(measured, java_code):
+    measured(extract_classes, java_code)
+
+
+def test_extract_methods(measured, java_code):
+    measured(extract_methods, java_code)
+
+
+def test_detect_relationships(measured, java_code):
+    measured(detect_relationships, java_code)
+
+
+def test_build_ast_json(measured, java_code, app_context):
+    measured(build_ast_json, java_code)
+
+
+def test_cfg_generate(measured, java_code):
+    measured(lambda code: CFGGenerator().generate(code), java_code)
+
+
+def test_cfg_visualize(measured, java_code):
+    generator = CFGGenerator()
+    generator.generate(java_code)
+    measured(generator.visualize, format="svg")
+
+
+def test_cfg_visualize_unsimplified(measured, java_code):
+    """Layout of the raw block graph (simplify=False, no summary), for comparison with test_cfg_visualize"""
+    generator = CFGGenerator()
+    generator.generate(java_code)
+    measured(generator.visualize, format="svg", simplify=False, node_budget=float('inf'))
@@ -0,0 +1,80 @@
+# benchmarks/cfg_layout_compare.py
+"""
+CFG layout time with and without graph simplification.
+
+For every file in `java test cases`, builds the CFG once and times
+CFGGenerator.visualize() (Graphviz layout + SVG) with simplify=False and no
+node budget (the raw block graph) and with the defaults (pass-through blocks
+dropped, straight-line chains merged, summary view over the budget). Reports
+rendered node counts, best-of-N times and the speedup per file.
+
+Usage:
+    python benchmarks/cfg_layout_compare.py --repeat 5 --output layout.json
+    python benchmarks/cfg_layout_compare.py --markdown   # table ready for a commit message or PR
+"""
+import argparse
+import glob
+import json
+import os
+import sys
+import time
+
+ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), '..'))
+sys.path.insert(0, ROOT)
+
+from app.cfg_utils import CFGGenerator  # noqa: E402
+
+VARIANTS = {
+    'raw': {'simplify': False, 'node_budget': float('inf')},
+    'simplified': {}
+}
+
+
+def best_time(fn, repeat):
+    best = None
+    for _ in range(repeat):
+        start = time.perf_counter()
+        fn()
+        elapsed = time.perf_counter() - start
+        best = elapsed if best is None else min(best, elapsed)
+    return best
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--repeat', type=int, default=5)
+    parser.add_argument('--output', help='write results as JSON to this file')
+    parser.add_argument('--markdown', action='store_true', help='print the results as a Markdown table')
+    args = parser.parse_args()
+
+    rows = []
+    print(f"{'file':34} {'raw nodes':>9} {'simp nodes':>10} {'raw ms':>9} {'simp ms':>9} {'speedup':>8}")
+    for path in sorted(glob.glob(os.path.join(ROOT, 'java test cases', '*.java'))):
+        with open(path, encoding='utf-8') as f:
+            code = f.read()
+        generator = CFGGenerator()
+        generator.generate(code)
+        row = {'file': os.path.basename(path)}
+        for name, options in VARIANTS.items():
+            row[f'{name}_nodes'] = generator._render_graph(options.get('simplify', True)).number_of_nodes()
+            row[f'{name}_ms'] = round(best_time(lambda: generator.visualize(format="svg", **options),
+                                                args.repeat) * 1000, 1)
+        row['speedup'] = round(row['raw_ms'] / row['simplified_ms'], 2) if row['simplified_ms'] else None
+        rows.append(row)
+        print(f"{row['file']:34} {row['raw_nodes']:>9} {row['simplified_nodes']:>10} "
+              f"{row['raw_ms']:>9} {row['simplified_ms']:>9} {row['speedup']:>8}")
+
+    if args.markdown:
+        print("\n| file | raw nodes | simplified nodes | raw ms | simplified ms | speedup |")
+        print("|---|---:|---:|---:|---:|---:|")
+        for row in rows:
+            print(f"| {row['file']} | {row['raw_nodes']} | {row['simplified_nodes']} | "
+                  f"{row['raw_ms']} | {row['simplified_ms']} | {row['speedup']} |")
+
+    if args.output:
+        with open(args.output, 'w') as f:
+            json.dump(rows, f, indent=2)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,57 @@
+# benchmarks/conftest.py
+"""
+Shared fixtures for the analyzer benchmarks.
+
+Run from the repository root:
+    pytest benchmarks/bench_analyzers.py --benchmark-json=bench_output.json
+
+Every benchmark also runs its target once under tracemalloc and stores the
+peak in extra_info["peak_memory_kb"], which is included in the JSON report.
+"""
+import glob
+import os
+import sys
+import tracemalloc
+import pytest
+from flask import Flask
+
+ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), '..'))
+sys.path.insert(0, ROOT)
+
+from app.stub_model import StubPipeline  # noqa: E402
+
+CORPUS_FILES = sorted(glob.glob(os.path.join(ROOT, 'java test cases', '*.java')))
+
+
+def read_java(path):
+    with open(path, encoding='utf-8') as f:
+        return f.read()
+
+
+@pytest.fixture(scope='session')
+def app_context():
+    """Minimal app context for analyzers that read current_app.hf_pipeline"""
+    app = Flask('benchmarks')
+    app.hf_pipeline = StubPipeline()  # No latency: time the analyzers alone
+    with app.app_context():
+        yield app
+
+
+@pytest.fixture(params=CORPUS_FILES, ids=lambda path: os.path.splitext(os.path.basename(path))[0])
+def java_code(request):
+    return read_java(request.param)
+
+
+@pytest.fixture
+def measured(benchmark):
+    """benchmark(fn, *args) that also records the peak traced memory of one extra call"""
+    def run(fn, *args, **kwargs):
+        tracemalloc.start()
+        try:
+            fn(*args, **kwargs)
+            _, peak = tracemalloc.get_traced_memory()
+        finally:
+            tracemalloc.stop()
+        benchmark.extra_info['peak_memory_kb'] = round(peak / 1024, 1)
+        return benchmark(fn, *args, **kwargs)
+    return run
@@ -0,0 +1,246 @@
+# benchmarks/load_test.py
+"""
+End-to-end load test: how many concurrent users one node sustains.
+
+Starts the app on a local port (threaded Werkzeug server, stub model backend,
+scratch SQLite database) or targets --url, then runs virtual users at each
+--concurrency level. Every virtual user replays sessions: log in via
+/auth/login, submit a `java test cases` file to /, fetch /ast-json and
+/generate-cfg for it, then load /api/dashboard. Reports sessions/s,
+requests/s, error rate and p50/p95/p99 latency per route for every level.
+
+Usage:
+    python benchmarks/load_test.py --concurrency 1 2 4 8 16 --duration 30 --output load.json
+    python benchmarks/load_test.py --url http://127.0.0.1:5000 --concurrency 4 8
+"""
+import argparse
+import glob
+import http.cookiejar
+import itertools
+import json
+import os
+import sys
+import tempfile
+import threading
+import time
+import urllib.error
+import urllib.parse
+import urllib.request
+
+ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), '..'))
+sys.path.insert(0, ROOT)
+
+PASSWORD = 'load-password'
+ROUTES = ('/auth/login', '/', '/ast-json', '/generate-cfg', '/api/dashboard')
+
+
+def percentile(values, pct):
+    if not values:
+        return None
+    values = sorted(values)
+    return values[min(len(values) - 1, int(round(pct / 100 * (len(values) - 1))))]
+
+
+def load_corpus():
+    corpus = []
+    for path in sorted(glob.glob(os.path.join(ROOT, 'java test cases', '*.java'))):
+        with open(path, encoding='utf-8') as f:
+            corpus.append((os.path.basename(path), f.read()))
+    return corpus
+
+
+def start_local_server(db_path, stub_latency=None, persistence_mode=None):
+    """Run create_app() with the stub model on a free local port; returns (base_url, server)"""
+    from werkzeug.serving import make_server
+    from app import create_app
+    from app.config import Config
+
+    class LoadTestConfig(Config):
+        SQLALCHEMY_DATABASE_URI = f"sqlite:///{db_path}"
+        MODEL_BACKEND = 'stub'
+    if persistence_mode:
+        LoadTestConfig.PERSISTENCE_MODE = persistence_mode
+    for key, value in (stub_latency or {}).items():
+        setattr(LoadTestConfig, key, value)
+
+    app = create_app(LoadTestConfig)
+    server = make_server('127.0.0.1', 0, app, threaded=True)
+    threading.Thread(target=server.serve_forever, daemon=True).start()
+    return f"http://127.0.0.1:{server.server_port}", server
+
+
+class VirtualUser:
+    """One browser: its own cookie jar, replaying sessions against base_url"""
+
+    def __init__(self, base_url, username, timeout=120):
+        self.base_url = base_url
+        self.username = username
+        self.timeout = timeout
+        self.opener = None
+
+    def request(self, method, path, form=None, payload=None):
+        """Returns (status, seconds); network errors are reported as status 0"""
+        data, headers = None, {}
+        if form is not None:
+            data = urllib.parse.urlencode(form).encode('utf-8')
+            headers['Content-Type'] = 'application/x-www-form-urlencoded'
+        elif payload is not None:
+            data = json.dumps(payload).encode('utf-8')
+            headers['Content-Type'] = 'application/json'
+        req = urllib.request.Request(self.base_url + path, data=data, headers=headers, method=method)
+        start = time.perf_counter()
+        try:
+            with self.opener.open(req, timeout=self.timeout) as response:
+                response.read()
+                status = response.status
+        except urllib.error.HTTPError as e:
+            e.read()
+            status = e.code
+        except (urllib.error.URLError, OSError):
+            status = 0
+        return status, time.perf_counter() - start
+
+    def signup(self):
+        self.opener = urllib.request.build_opener(urllib.request.HTTPCookieProcessor(http.cookiejar.CookieJar()))
+        return self.request('POST', '/auth/signup', form={
+            'username': self.username, 'email': f"{self.username}@example.com", 'password': PASSWORD
+        })
+
+    def session(self, name, code, record):
+        """Log in with a fresh cookie jar and replay one session; record(route, status, seconds)"""
+        self.opener = urllib.request.build_opener(urllib.request.HTTPCookieProcessor(http.cookiejar.CookieJar()))
+        status, seconds = self.request('POST', '/auth/login', form={'username': self.username, 'password': PASSWORD})
+        record('/auth/login', status, seconds)
+        if status != 200:
+            return False
+        steps = (
+            ('POST', '/', {'code': code, 'submission_name': name}),
+            ('POST', '/ast-json', {'code': code}),
+            ('POST', '/generate-cfg', {'code': code, 'theme': 'light'}),
+            ('GET', '/api/dashboard', None)
+        )
+        ok = True
+        for method, path, payload in steps:
+            status, seconds = self.request(method, path, payload=payload)
+            record(path, status, seconds)
+            ok = ok and 200 <= status < 400
+        return ok
+
+
+def run_level(base_url, corpus, concurrency, duration, fresh_code=False, user_prefix='load'):
+    """Run `concurrency` virtual users for `duration` seconds and summarize per route"""
+    latencies = {route: [] for route in ROUTES}
+    errors = {route: 0 for route in ROUTES}
+    sessions = {'completed': 0, 'failed': 0}
+    lock = threading.Lock()
+    stop = threading.Event()
+    counter = itertools.count()
+
+    def record(route, status, seconds):
+        with lock:
+            latencies[route].append(seconds)
+            if not 200 <= status < 400:
+                errors[route] += 1
+
+    users = [VirtualUser(base_url, f"{user_prefix}{n}") for n in range(concurrency)]
+    for user in users:
+        user.signup()  # 400 when the account already exists, which is fine
+
+    def run(user):
+        while True:  # Every user completes at least one session
+            i = next(counter)
+            name, code = corpus[i % len(corpus)]
+            if fresh_code:
+                code = f"{code}\n// load-test session {i}\n"  # Distinct hash: skips the submission/artifact caches
+            ok = user.session(name, code, record)
+            with lock:
+                sessions['completed' if ok else 'failed'] += 1
+            if stop.is_set():
+                break
+
+    threads = [threading.Thread(target=run, args=(user,)) for user in users]
+    start = time.perf_counter()
+    for thread in threads:
+        thread.start()
+    time.sleep(duration)
+    stop.set()
+    for thread in threads:
+        thread.join()
+    elapsed = time.perf_counter() - start  # Includes the sessions still running at the deadline
+
+    total_requests = sum(len(values) for values in latencies.values())
+    total_errors = sum(errors.values())
+    routes = {}
+    for route in ROUTES:
+        values = latencies[route]
+        routes[route] = {
+            'requests': len(values),
+            'errors': errors[route],
+            'p50_ms': round(percentile(values, 50) * 1000, 1) if values else None,
+            'p95_ms': round(percentile(values, 95) * 1000, 1) if values else None,
+            'p99_ms': round(percentile(values, 99) * 1000, 1) if values else None
+        }
+    return {
+        'concurrency': concurrency,
+        'seconds': round(elapsed, 2),
+        'sessions': sessions['completed'] + sessions['failed'],
+        'failed_sessions': sessions['failed'],
+        'sessions_per_s': round((sessions['completed'] + sessions['failed']) / elapsed, 2),
+        'requests_per_s': round(total_requests / elapsed, 2),
+        'error_rate': round(total_errors / total_requests, 4) if total_requests else None,
+        'routes': routes
+    }
+
+
+def print_level(result):
+    print(f"\nconcurrency={result['concurrency']} sessions/s={result['sessions_per_s']} "
+          f"requests/s={result['requests_per_s']} error_rate={result['error_rate']}")
+    print(f"  {'route':16} {'requests':>8} {'errors':>6} {'p50 ms':>9} {'p95 ms':>9} {'p99 ms':>9}")
+    for route, stats in result['routes'].items():
+        print(f"  {route:16} {stats['requests']:>8} {stats['errors']:>6} "
+              f"{stats['p50_ms'] if stats['p50_ms'] is not None else '-':>9} "
+              f"{stats['p95_ms'] if stats['p95_ms'] is not None else '-':>9} "
+              f"{stats['p99_ms'] if stats['p99_ms'] is not None else '-':>9}")
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--url', help='target a running server instead of starting one (needs signup enabled)')
+    parser.add_argument('--concurrency', type=int, nargs='+', default=[1, 2, 4, 8, 16])
+    parser.add_argument('--duration', type=float, default=30, help='seconds per concurrency level')
+    parser.add_argument('--fresh-code', action='store_true', help='make every submission unique (no cache hits)')
+    parser.add_argument('--persistence-mode', choices=['sync', 'write_behind'])
+    parser.add_argument('--item-ms', type=float, default=15, help='stub model latency per input')
+    parser.add_argument('--batch-ms', type=float, default=20, help='stub model latency per batch')
+    parser.add_argument('--output', help='write results as JSON to this file')
+    args = parser.parse_args()
+
+    corpus = load_corpus()
+    with tempfile.TemporaryDirectory() as tmp:
+        server = None
+        base_url = args.url
+        if base_url is None:
+            base_url, server = start_local_server(
+                os.path.join(tmp, 'load.db'),
+                stub_latency={'STUB_ITEM_LATENCY_MS': args.item_ms, 'STUB_BATCH_LATENCY_MS': args.batch_ms},
+                persistence_mode=args.persistence_mode
+            )
+        try:
+            # One warm-up session so imports and first-request setup stay out of the numbers
+            run_level(base_url, corpus, 1, 0)
+            results = []
+            for concurrency in args.concurrency:
+                result = run_level(base_url, corpus, concurrency, args.duration, args.fresh_code)
+                results.append(result)
+                print_level(result)
+        finally:
+            if server is not None:
+                server.shutdown()
+
+    if args.output:
+        with open(args.output, 'w') as f:
+            json.dump(results, f, indent=2)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,146 @@
+# benchmarks/login_burst_bench.py
+"""
+Analysis latency during a login burst.
+
+Analysis threads post the `java test cases` files to /ast-json, first with no
+logins (the reference latency), then while login threads hammer /auth/login
+with password hashing inline on the request threads (PASSWORD_HASH_WORKERS=0,
+the old behaviour), and then with the bounded hashing pool. Reports analysis
+p50/p99, p99 relative to the no-login run, and how many logins succeeded or were
+answered with 503 + Retry-After. The model is not loaded (MODEL_BACKEND = 'none').
+
+Usage:
+    python benchmarks/login_burst_bench.py --login-threads 32 --analysis-threads 4 --duration 20
+"""
+import argparse
+import glob
+import json
+import os
+import sys
+import tempfile
+import threading
+import time
+
+sys.path.insert(0, os.path.abspath(os.path.join(os.path.dirname(__file__), '..')))
+
+from app import create_app, db  # noqa: E402
+from app.config import Config  # noqa: E402
+from app.models import User  # noqa: E402
+
+ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), '..'))
+PASSWORD = 'burst-password'
+
+
+def percentile(values, pct):
+    if not values:
+        return None
+    values = sorted(values)
+    return values[min(len(values) - 1, int(round(pct / 100 * (len(values) - 1))))]
+
+
+def load_corpus():
+    files = sorted(glob.glob(os.path.join(ROOT, 'java test cases', '*.java')))
+    corpus = []
+    for path in files:
+        with open(path, encoding='utf-8') as f:
+            corpus.append(f.read())
+    return corpus
+
+
+def make_app(db_path, hash_workers, max_pending, users):
+    class BurstConfig(Config):
+        SQLALCHEMY_DATABASE_URI = f"sqlite:///{db_path}"
+        PASSWORD_HASH_WORKERS = hash_workers
+        PASSWORD_HASH_MAX_PENDING = max_pending
+        PERSISTENCE_MODE = 'sync'
+        MODEL_BACKEND = 'none'  # /ast-json doesn't use the model; don't load it
+    app = create_app(BurstConfig)
+    with app.app_context():
+        for i in range(users):
+            if User.query.filter_by(username=f"burst{i}").first() is None:
+                user = User(username=f"burst{i}", email=f"burst{i}@example.com")
+                user.set_password(PASSWORD)
+                db.session.add(user)
+        db.session.commit()
+    return app
+
+
+def run_scenario(app, corpus, login_threads, analysis_threads, users, duration):
+    stop = threading.Event()
+    analysis_latencies = []
+    login_status = {}
+    lock = threading.Lock()
+
+    def analyst(worker_id):
+        client = app.test_client()
+        i = worker_id
+        while not stop.is_set():
+            start = time.perf_counter()
+            client.post('/ast-json', json={'code': corpus[i % len(corpus)]})
+            elapsed = time.perf_counter() - start
+            with lock:
+                analysis_latencies.append(elapsed)
+            i += 1
+
+    def login_storm(worker_id):
+        i = worker_id
+        while not stop.is_set():
+            client = app.test_client()  # Fresh client: no session cookie, so every login hashes
+            response = client.post('/auth/login', data={'username': f"burst{i % users}", 'password': PASSWORD})
+            with lock:
+                login_status[response.status_code] = login_status.get(response.status_code, 0) + 1
+            i += 1
+
+    threads = [threading.Thread(target=analyst, args=(n,)) for n in range(analysis_threads)]
+    threads += [threading.Thread(target=login_storm, args=(n,)) for n in range(login_threads)]
+    for thread in threads:
+        thread.start()
+    time.sleep(duration)
+    stop.set()
+    for thread in threads:
+        thread.join()
+
+    return {
+        'analysis_requests': len(analysis_latencies),
+        'analysis_p50_ms': round(percentile(analysis_latencies, 50) * 1000, 1) if analysis_latencies else None,
+        'analysis_p99_ms': round(percentile(analysis_latencies, 99) * 1000, 1) if analysis_latencies else None,
+        'logins': {str(code): count for code, count in sorted(login_status.items())}
+    }
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--login-threads', type=int, default=32)
+    parser.add_argument('--analysis-threads', type=int, default=4)
+    parser.add_argument('--duration', type=float, default=20, help='seconds per scenario')
+    parser.add_argument('--hash-workers', type=int, default=2)
+    parser.add_argument('--max-pending', type=int, default=16)
+    parser.add_argument('--users', type=int, default=20)
+    parser.add_argument('--output', help='write results as JSON to this file')
+    args = parser.parse_args()
+
+    corpus = load_corpus()
+    results = []
+    with tempfile.TemporaryDirectory() as tmp:
+        scenarios = [('no-logins', args.hash_workers, 0), ('inline', 0, args.login_threads),
+                     ('bounded-pool', args.hash_workers, args.login_threads)]
+        reference_p99 = None
+        for name, workers, login_threads in scenarios:
+            app = make_app(os.path.join(tmp, f"{name}.db"), workers, args.max_pending, args.users)
+            result = run_scenario(app, corpus, login_threads, args.analysis_threads, args.users, args.duration)
+            result['scenario'] = name
+            if reference_p99 is None:
+                reference_p99 = result['analysis_p99_ms']
+            result['p99_vs_no_logins'] = (round(result['analysis_p99_ms'] / reference_p99, 2)
+                                          if reference_p99 and result['analysis_p99_ms'] else None)
+            results.append(result)
+            print(f"{name:13} analysis p50={result['analysis_p50_ms']}ms p99={result['analysis_p99_ms']}ms "
+                  f"(x{result['p99_vs_no_logins']}) requests={result['analysis_requests']} logins={result['logins']}")
+
+    if args.output:
+        with open(args.output, 'w') as f:
+            json.dump(results, f, indent=2)
+
+
+if __name__ == '__main__':
+    main()
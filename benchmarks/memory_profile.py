@@ -0,0 +1,206 @@
+# benchmarks/memory_profile.py
+"""
+Per-request memory retention under tracemalloc.
+
+Drives each endpoint --requests times in-process (Flask test client, stub model
+backend, scratch SQLite database, synchronous persistence) after a warm-up.
+Bounded caches (the CFG render cache and the inference telemetry window) are
+cleared before each snapshot, so only memory that keeps growing with traffic is
+reported. For every endpoint it prints the retained bytes extrapolated per 1000
+requests, the peak traced memory of a single request and the top allocation
+sites by retained size. Exits 1 when any endpoint retains more than
+--max-growth-kb per 1000 requests.
+
+Usage:
+    python benchmarks/memory_profile.py --requests 500 --max-growth-kb 512 --output memory.json
+"""
+import argparse
+import gc
+import glob
+import io
+import itertools
+import json
+import os
+import sys
+import tempfile
+import tracemalloc
+
+ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), '..'))
+sys.path.insert(0, ROOT)
+
+from app import create_app, db  # noqa: E402
+from app.config import Config  # noqa: E402
+from app.models import User  # noqa: E402
+from app.inference import telemetry  # noqa: E402
+from app.main.routes import clear_cfg_cache  # noqa: E402
+
+ENDPOINTS = ('/', '/ast-json', '/generate-cfg', '/process-folder', '/api/dashboard')
+PASSWORD = 'memory-password'
+# Allocations made by the profiler itself or by imports are not request retention
+IGNORED_FILES = (tracemalloc.__file__, '<frozen importlib._bootstrap>', '<frozen importlib._bootstrap_external>')
+
+
+def load_corpus():
+    corpus = []
+    for path in sorted(glob.glob(os.path.join(ROOT, 'java test cases', '*.java'))):
+        with open(path, encoding='utf-8') as f:
+            corpus.append((os.path.basename(path), f.read()))
+    return corpus
+
+
+def make_app(db_path):
+    class MemoryConfig(Config):
+        SQLALCHEMY_DATABASE_URI = f"sqlite:///{db_path}"
+        MODEL_BACKEND = 'stub'
+        STUB_BATCH_LATENCY_MS = 0.0
+        STUB_ITEM_LATENCY_MS = 0.0
+        PERSISTENCE_MODE = 'sync'  # Queued write-behind records would show up as retention
+        CFG_WORKERS = 1
+    app = create_app(MemoryConfig)
+    with app.app_context():
+        if User.query.filter_by(username='memory').first() is None:
+            user = User(username='memory', email='memory@example.com')
+            user.set_password(PASSWORD)
+            db.session.add(user)
+            db.session.commit()
+    return app
+
+
+def clear_bounded_caches():
+    clear_cfg_cache()
+    telemetry.calls.clear()
+    telemetry.queue_waits.clear()
+
+
+def make_requester(client, endpoint, corpus, fresh_code):
+    """Returns a function issuing one request to endpoint; each call uses the next corpus file"""
+    counter = itertools.count()
+
+    def code_for(i):
+        name, code = corpus[i % len(corpus)]
+        if fresh_code:
+            code = f"{code}\n// memory-profile request {i}\n"  # Distinct hash: no cache hits
+        return name, code
+
+    def send():
+        i = next(counter)
+        name, code = code_for(i)
+        if endpoint == '/':
+            return client.post('/', json={'code': code, 'submission_name': name})
+        if endpoint == '/ast-json':
+            return client.post('/ast-json', json={'code': code})
+        if endpoint == '/generate-cfg':
+            return client.post('/generate-cfg', json={'code': code, 'theme': 'light'})
+        if endpoint == '/process-folder':
+            files = []
+            for offset in range(3):
+                file_name, file_code = code_for(i * 3 + offset)
+                files.append((io.BytesIO(file_code.encode('utf-8')), file_name))
+            return client.post('/process-folder', data={'files[]': files}, content_type='multipart/form-data')
+        return client.get('/api/dashboard')
+    return send
+
+
+def snapshot():
+    gc.collect()
+    clear_bounded_caches()
+    gc.collect()
+    return tracemalloc.take_snapshot().filter_traces(
+        [tracemalloc.Filter(False, filename) for filename in IGNORED_FILES]
+    )
+
+
+def profile_endpoint(send, requests, warmup, top, group_by):
+    for _ in range(warmup):
+        send()
+    before = snapshot()
+
+    peaks = []
+    errors = 0
+    for _ in range(requests):
+        tracemalloc.reset_peak()
+        baseline = tracemalloc.get_traced_memory()[0]
+        response = send()
+        peaks.append(tracemalloc.get_traced_memory()[1] - baseline)
+        if response.status_code >= 400:
+            errors += 1
+        response.close()
+
+    after = snapshot()
+    diff = after.compare_to(before, group_by)
+    retained = sum(stat.size_diff for stat in diff)
+    sites = []
+    for stat in sorted(diff, key=lambda s: s.size_diff, reverse=True)[:top]:
+        if stat.size_diff <= 0:
+            break
+        frame = stat.traceback[-1]  # Most recent frame: where the memory was allocated
+        filename = os.path.relpath(frame.filename, ROOT) if frame.filename.startswith(ROOT) else frame.filename
+        sites.append({
+            'site': f"{filename}:{frame.lineno}",
+            'retained_kb': round(stat.size_diff / 1024, 1),
+            'blocks': stat.count_diff
+        })
+    peaks.sort()
+    return {
+        'requests': requests,
+        'errors': errors,
+        'retained_kb': round(retained / 1024, 1),
+        'growth_kb_per_1000': round(retained / 1024 / requests * 1000, 1),
+        'peak_kb_p50': round(peaks[len(peaks) // 2] / 1024, 1),
+        'peak_kb_max': round(peaks[-1] / 1024, 1),
+        'top_sites': sites
+    }
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--endpoints', nargs='+', choices=ENDPOINTS, default=list(ENDPOINTS))
+    parser.add_argument('--requests', type=int, default=500, help='measured requests per endpoint')
+    parser.add_argument('--warmup', type=int, default=50)
+    parser.add_argument('--max-growth-kb', type=float, default=1024, help='allowed retention per 1000 requests')
+    parser.add_argument('--repeat-code', action='store_true', help='resend identical files (exercises cache hits)')
+    parser.add_argument('--top', type=int, default=10, help='allocation sites listed per endpoint')
+    parser.add_argument('--frames', type=int, default=1, help='traceback depth recorded by tracemalloc')
+    parser.add_argument('--output', help='write results as JSON to this file')
+    args = parser.parse_args()
+
+    corpus = load_corpus()
+    group_by = 'traceback' if args.frames > 1 else 'lineno'
+    results = {}
+    failed = []
+    with tempfile.TemporaryDirectory() as tmp:
+        app = make_app(os.path.join(tmp, 'memory.db'))
+        client = app.test_client()
+        login = client.post('/auth/login', data={'username': 'memory', 'password': PASSWORD})
+        if login.status_code != 200:
+            sys.exit(f"login failed with status {login.status_code}")
+
+        tracemalloc.start(args.frames)
+        try:
+            for endpoint in args.endpoints:
+                send = make_requester(client, endpoint, corpus, not args.repeat_code)
+                result = profile_endpoint(send, args.requests, args.warmup, args.top, group_by)
+                results[endpoint] = result
+                over = result['growth_kb_per_1000'] > args.max_growth_kb
+                if over:
+                    failed.append(endpoint)
+
+                print(f"\n{endpoint}: retained {result['growth_kb_per_1000']} KB / 1000 requests"
+                      f"{'  <-- over ' + str(args.max_growth_kb) + ' KB' if over else ''}; "
+                      f"peak per request p50={result['peak_kb_p50']} KB max={result['peak_kb_max']} KB; "
+                      f"errors={result['errors']}")
+                for site in result['top_sites']:
+                    print(f"  {site['retained_kb']:>10} KB {site['blocks']:>7} blocks  {site['site']}")
+        finally:
+            tracemalloc.stop()
+
+    if args.output:
+        with open(args.output, 'w') as f:
+            json.dump({'max_growth_kb': args.max_growth_kb, 'endpoints': results}, f, indent=2)
+    if failed:
+        print(f"\nRetention above {args.max_growth_kb} KB per 1000 requests: {', '.join(failed)}")
+        sys.exit(1)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,213 @@
+# benchmarks/perf_gate.py
+"""
+Performance regression gate.
+
+Runs the analyzer benchmarks (bench_analyzers.py, via pytest-benchmark) and a
+short stub-model end-to-end scenario (load_test.py), then compares every metric
+with benchmarks/perf_baseline.json. The baseline holds the reference values and
+the tolerance rules: the first rule whose pattern matches a metric name gives
+its allowed relative change and whether lower or higher is better. Prints a
+table of baseline vs current values and exits 1 when any metric regressed past
+its tolerance (DEFAULT_RULES when the file has none). Metrics missing from the
+baseline are listed as new and do not fail the gate, but a missing baseline, or
+one with no reference values for the benchmarks that were run, fails it (exit
+2): there would be nothing to compare against.
+
+No baseline is checked in yet, so the gate is not in use. It becomes usable
+once a baseline recorded on the reference machine is committed.
+
+Record or refresh the baseline on the reference machine:
+    python benchmarks/perf_gate.py --update-baseline
+
+Check the working tree against it (e.g. before deploying):
+    python benchmarks/perf_gate.py
+"""
+import argparse
+import fnmatch
+import json
+import os
+import subprocess
+import sys
+import tempfile
+
+BENCH_DIR = os.path.dirname(os.path.abspath(__file__))
+ROOT = os.path.abspath(os.path.join(BENCH_DIR, '..'))
+DEFAULT_BASELINE = os.path.join(BENCH_DIR, 'perf_baseline.json')
+
+# Used when the baseline file has no "rules" of its own
+DEFAULT_RULES = [
+    {'match': 'e2e.error_rate', 'direction': 'lower', 'absolute': 0.0},
+    {'match': 'e2e.*_per_s', 'direction': 'higher', 'tolerance': 0.25},
+    {'match': 'e2e.*', 'direction': 'lower', 'tolerance': 0.35},
+    {'match': 'analyzer.*.peak_memory_kb', 'direction': 'lower', 'tolerance': 0.10},
+    {'match': 'analyzer.*', 'direction': 'lower', 'tolerance': 0.25}
+]
+
+
+def run_analyzer_benchmarks(extra_args=()):
+    """Run bench_analyzers.py and return {metric: value}"""
+    with tempfile.TemporaryDirectory() as tmp:
+        report = os.path.join(tmp, 'bench.json')
+        command = [sys.executable, '-m', 'pytest', os.path.join(BENCH_DIR, 'bench_analyzers.py'),
+                   '-q', f'--benchmark-json={report}', *extra_args]
+        completed = subprocess.run(command, cwd=ROOT)
+        if completed.returncode != 0 or not os.path.exists(report):
+            sys.exit(f"analyzer benchmarks failed (pytest exit code {completed.returncode})")
+        with open(report) as f:
+            data = json.load(f)
+
+    metrics = {}
+    for bench in data['benchmarks']:
+        name = f"analyzer.{bench['name'].removeprefix('test_')}"
+        metrics[f"{name}.median_ms"] = round(bench['stats']['median'] * 1000, 3)
+        if 'peak_memory_kb' in bench.get('extra_info', {}):
+            metrics[f"{name}.peak_memory_kb"] = bench['extra_info']['peak_memory_kb']
+    return metrics
+
+
+def run_e2e_scenario(concurrency, duration):
+    """Stub-model end-to-end sessions at one concurrency level; returns {metric: value}"""
+    sys.path.insert(0, BENCH_DIR)
+    from load_test import load_corpus, start_local_server, run_level
+
+    with tempfile.TemporaryDirectory() as tmp:
+        # Fixed stub latencies so the baseline does not depend on the environment's STUB_* settings
+        base_url, server = start_local_server(
+            os.path.join(tmp, 'gate.db'),
+            stub_latency={'STUB_CALL_LATENCY_MS': 0.0, 'STUB_BATCH_LATENCY_MS': 20.0,
+                          'STUB_ITEM_LATENCY_MS': 15.0, 'STUB_TOKEN_LATENCY_MS': 0.0, 'STUB_JITTER': 0.0}
+        )
+        try:
+            corpus = load_corpus()
+            run_level(base_url, corpus, 1, 0)  # Warm-up
+            result = run_level(base_url, corpus, concurrency, duration, fresh_code=True)
+        finally:
+            server.shutdown()
+
+    metrics = {
+        'e2e.sessions_per_s': result['sessions_per_s'],
+        'e2e.requests_per_s': result['requests_per_s'],
+        'e2e.error_rate': result['error_rate']
+    }
+    for route, stats in result['routes'].items():
+        for key in ('p50_ms', 'p95_ms'):
+            if stats[key] is not None:
+                metrics[f"e2e.{route}.{key}"] = stats[key]
+    return metrics
+
+
+def find_rule(rules, metric):
+    for rule in rules:
+        if fnmatch.fnmatchcase(metric, rule['match']):
+            return rule
+    return {'match': '*', 'direction': 'lower', 'tolerance': 0.25}
+
+
+def compare(baseline, current, rules):
+    """One row per metric: (metric, baseline, current, change, limit, status)"""
+    rows = []
+    for metric in sorted(set(baseline) | set(current)):
+        old, new = baseline.get(metric), current.get(metric)
+        if new is None:
+            rows.append((metric, old, None, None, None, 'missing'))
+            continue
+        if old is None:
+            rows.append((metric, None, new, None, None, 'new'))
+            continue
+
+        rule = find_rule(rules, metric)
+        sign = 1 if rule['direction'] == 'lower' else -1  # Positive delta = worse
+        delta = sign * (new - old)
+        if 'absolute' in rule:
+            limit = rule['absolute']
+            regressed = delta > limit
+            limit_text = f"+{limit:g}"
+        else:
+            limit = rule['tolerance']
+            regressed = old != 0 and delta / abs(old) > limit
+            limit_text = f"{limit:.0%}"
+        change = (new - old) / abs(old) if old else None
+
+        if regressed:
+            status = 'REGRESSION'
+        elif change is not None and sign * change < -(rule.get('tolerance', 0) or 0):
+            status = 'improved'
+        else:
+            status = 'ok'
+        rows.append((metric, old, new, change, limit_text, status))
+    return rows
+
+
+def print_table(rows, verbose):
+    def fmt(value):
+        return '-' if value is None else f"{value:g}"
+
+    width = max([len(row[0]) for row in rows] + [6])
+    print(f"\n{'metric':{width}} {'baseline':>11} {'current':>11} {'change':>8} {'limit':>7}  status")
+    for metric, old, new, change, limit, status in rows:
+        if not verbose and status == 'ok':
+            continue
+        change_text = '-' if change is None else f"{change:+.1%}"
+        print(f"{metric:{width}} {fmt(old):>11} {fmt(new):>11} {change_text:>8} {limit or '-':>7}  {status}")
+
+    counts = {}
+    for row in rows:
+        counts[row[5]] = counts.get(row[5], 0) + 1
+    print("\n" + ", ".join(f"{count} {status}" for status, count in sorted(counts.items())))
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--baseline', default=DEFAULT_BASELINE)
+    parser.add_argument('--update-baseline', action='store_true', help='store the current results as the baseline')
+    parser.add_argument('--skip-analyzers', action='store_true')
+    parser.add_argument('--skip-e2e', action='store_true')
+    parser.add_argument('--concurrency', type=int, default=4, help='virtual users in the end-to-end scenario')
+    parser.add_argument('--duration', type=float, default=20, help='seconds of end-to-end load')
+    parser.add_argument('--verbose', action='store_true', help='also list metrics within tolerance')
+    parser.add_argument('--output', help='write current metrics as JSON to this file')
+    args = parser.parse_args()
+
+    baseline = {'rules': DEFAULT_RULES, 'metrics': {}}
+    if os.path.exists(args.baseline):
+        with open(args.baseline) as f:
+            baseline.update(json.load(f))
+    elif not args.update_baseline:
+        print(f"No baseline at {args.baseline}; record one on the reference machine with --update-baseline",
+              file=sys.stderr)
+        sys.exit(2)
+
+    current = {}
+    if not args.skip_analyzers:
+        current.update(run_analyzer_benchmarks())
+    if not args.skip_e2e:
+        current.update(run_e2e_scenario(args.concurrency, args.duration))
+
+    if args.output:
+        with open(args.output, 'w') as f:
+            json.dump(current, f, indent=2, sort_keys=True)
+
+    if args.update_baseline:
+        baseline['metrics'].update(current)
+        with open(args.baseline, 'w') as f:
+            json.dump(baseline, f, indent=2, sort_keys=True)
+            f.write('\n')
+        print(f"Baseline updated with {len(current)} metrics: {args.baseline}")
+        return
+
+    # Only compare what was run this time
+    reference = {metric: value for metric, value in baseline['metrics'].items()
+                 if not (args.skip_analyzers and metric.startswith('analyzer.'))
+                 and not (args.skip_e2e and metric.startswith('e2e.'))}
+    if not reference:
+        print(f"No baseline metrics in {args.baseline} for the benchmarks that were run; "
+              "record them on the reference machine with --update-baseline", file=sys.stderr)
+        sys.exit(2)
+    rows = compare(reference, current, baseline['rules'])
+    print_table(rows, args.verbose)
+    if any(row[5] == 'REGRESSION' for row in rows):
+        sys.exit(1)
+
+
+if __name__ == '__main__':
+    main()
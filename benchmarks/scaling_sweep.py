@@ -0,0 +1,162 @@
+# benchmarks/scaling_sweep.py
+"""
+Time-vs-size sweep of the analyzers over synthetic Java.
+
+One CorpusSpec dimension is varied over --values while the others keep their
+--option values; every analyzer in app/utils.py and app/cfg_utils.py is timed
+(best of --repeat) on each generated file. The fitted log-log slope of time
+against lines of code is reported per analyzer: ~1 is linear, ~2 quadratic,
+so paths like brace rescanning or exit-block searches stand out.
+
+With --cfg-workers, CFG generation is also timed with CFGGenerator(workers=n)
+for each n (the process pool only starts for files with PARALLEL_MIN_METHODS or
+more methods), which shows how generation time scales with cores.
+
+Usage:
+    python benchmarks/scaling_sweep.py --dimension methods --values 5 10 20 40 80 --output sweep.json --plot sweep.png
+    python benchmarks/scaling_sweep.py --dimension methods --values 100 200 400 800 --analyzers cfg_generate --cfg-workers 1 2 4
+"""
+import argparse
+import json
+import math
+import os
+import sys
+import time
+from dataclasses import asdict
+
+sys.path.insert(0, os.path.abspath(os.path.join(os.path.dirname(__file__), '..')))
+
+from flask import Flask  # noqa: E402
+from app.utils import (  # noqa: E402
+    wrap_code_if_needed, format_ast, extract_classes, extract_methods, detect_relationships, build_ast_json
+)
+from app.cfg_utils import CFGGenerator  # noqa: E402
+from app.stub_model import StubPipeline  # noqa: E402
+from java_corpus import CorpusSpec, generate_java, add_spec_arguments, spec_from_args  # noqa: E402
+
+
+def _cfg_generate(code):
+    CFGGenerator().generate(code)
+
+
+def _cfg_generate_with(workers):
+    def run(code):
+        CFGGenerator(workers=workers).generate(code)
+    return run
+
+
+def _cfg_visualize(code):
+    generator = CFGGenerator()
+    generator.generate(code)
+    generator.visualize(format="svg")
+
+
+ANALYZERS = {
+    'wrap_code_if_needed': wrap_code_if_needed,
+    'format_ast': format_ast,
+    'extract_classes': extract_classes,
+    'extract_methods': extract_methods,
+    'detect_relationships': detect_relationships,
+    'build_ast_json': build_ast_json,
+    'cfg_generate': _cfg_generate,
+    'cfg_generate_visualize': _cfg_visualize
+}
+
+
+def best_time(fn, code, repeat):
+    best = None
+    for _ in range(repeat):
+        start = time.perf_counter()
+        fn(code)
+        elapsed = time.perf_counter() - start
+        best = elapsed if best is None else min(best, elapsed)
+    return best
+
+
+def loglog_slope(sizes, times):
+    """Least-squares slope of log(time) over log(size)"""
+    points = [(math.log(s), math.log(t)) for s, t in zip(sizes, times) if s > 0 and t and t > 0]
+    if len(points) < 2:
+        return None
+    mean_x = sum(x for x, _ in points) / len(points)
+    mean_y = sum(y for _, y in points) / len(points)
+    var_x = sum((x - mean_x) ** 2 for x, _ in points)
+    if var_x == 0:
+        return None
+    return sum((x - mean_x) * (y - mean_y) for x, y in points) / var_x
+
+
+def plot(rows, analyzers, path):
+    try:
+        import matplotlib
+        matplotlib.use('Agg')
+        import matplotlib.pyplot as plt
+    except ImportError:
+        print("matplotlib not installed; skipping plot")
+        return
+    fig, ax = plt.subplots(figsize=(8, 6))
+    sizes = [row['loc'] for row in rows]
+    for name in analyzers:
+        ax.plot(sizes, [row['seconds'][name] for row in rows], marker='o', label=name)
+    ax.set_xscale('log')
+    ax.set_yscale('log')
+    ax.set_xlabel('lines of code')
+    ax.set_ylabel('seconds (best of repeats)')
+    ax.legend(fontsize='small')
+    fig.tight_layout()
+    fig.savefig(path)
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--dimension', default='methods', choices=[f for f in asdict(CorpusSpec()) if f != 'seed'])
+    parser.add_argument('--values', type=float, nargs='+', default=[5, 10, 20, 40, 80])
+    parser.add_argument('--analyzers', nargs='+', choices=list(ANALYZERS), default=list(ANALYZERS))
+    parser.add_argument('--repeat', type=int, default=3)
+    parser.add_argument('--cfg-workers', type=int, nargs='+', default=[],
+                        help='also time cfg_generate with these process pool sizes')
+    parser.add_argument('--output', help='write results as JSON to this file')
+    parser.add_argument('--plot', help='write a log-log plot (needs matplotlib) to this file')
+    add_spec_arguments(parser)
+    args = parser.parse_args()
+    for workers in args.cfg_workers:
+        ANALYZERS[f'cfg_generate_w{workers}'] = _cfg_generate_with(workers)
+        args.analyzers.append(f'cfg_generate_w{workers}')
+
+    app = Flask('scaling_sweep')
+    app.hf_pipeline = StubPipeline()  # No latency: time the analyzers alone
+    rows = []
+    with app.app_context():
+        for value in args.values:
+            field_type = type(getattr(CorpusSpec(), args.dimension))
+            spec = spec_from_args(args, **{args.dimension: field_type(value)})
+            code = generate_java(spec)
+            row = {'value': value, 'loc': code.count('\n') + 1, 'bytes': len(code), 'seconds': {}}
+            for name in args.analyzers:
+                row['seconds'][name] = best_time(ANALYZERS[name], code, args.repeat)
+            rows.append(row)
+            print(f"{args.dimension}={value:<8g} loc={row['loc']:<7} " +
+                  " ".join(f"{name}={seconds * 1000:.1f}ms" for name, seconds in row['seconds'].items()))
+
+    slopes = {}
+    print("\nlog-log slope of time vs lines of code (1 = linear, 2 = quadratic):")
+    for name in args.analyzers:
+        slope = loglog_slope([row['loc'] for row in rows], [row['seconds'][name] for row in rows])
+        slopes[name] = slope
+        flag = "  <-- superlinear" if slope is not None and slope > 1.5 else ""
+        print(f"  {name:24} {slope:.2f}{flag}" if slope is not None else f"  {name:24} n/a")
+
+    if args.output:
+        with open(args.output, 'w') as f:
+            json.dump({
+                'dimension': args.dimension,
+                'base_spec': asdict(spec_from_args(args)),
+                'rows': rows,
+                'slopes': slopes
+            }, f, indent=2)
+    if args.plot:
+        plot(rows, args.analyzers, args.plot)
+
+
+if __name__ == '__main__':
+    main()
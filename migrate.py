@@ -0,0 +1,79 @@
+# /migrate.py
+"""
+One-off schema upgrade for an existing database (e.g. users.db).
+
+create_app() only creates missing tables. Run this once, before starting the
+server, after pulling changes that add columns or indexes to existing tables:
+
+    python migrate.py            # apply
+    python migrate.py --dry-run  # only print the statements
+
+Missing columns are added with ALTER TABLE ... ADD COLUMN and missing indexes
+are created. Columns whose type differs from the model are reported and make
+the script exit 1; those need a manual migration (SQLite cannot alter a column
+type in place).
+"""
+import argparse
+import os
+import sys
+
+os.environ.setdefault('MODEL_BACKEND', 'none')  # Schema work doesn't need the model
+
+from sqlalchemy import inspect, text  # noqa: E402
+from app import create_app, db  # noqa: E402
+
+
+def plan(engine):
+    """Returns (statements, type_mismatches) needed to bring the tables up to the models"""
+    inspector = inspect(engine)
+    preparer = engine.dialect.identifier_preparer
+    statements, mismatches = [], []
+    for table in db.metadata.sorted_tables:
+        if not inspector.has_table(table.name):
+            continue  # create_app() creates whole tables
+        existing = {column['name']: column for column in inspector.get_columns(table.name)}
+        for column in table.columns:
+            column_type = column.type.compile(dialect=engine.dialect)
+            if column.name not in existing:
+                statements.append(
+                    f'ALTER TABLE {preparer.quote(table.name)} ADD COLUMN {preparer.quote(column.name)} {column_type}'
+                )
+                continue
+            current_type = existing[column.name]['type']
+            # Compare generic type families, so e.g. FLOAT vs DOUBLE PRECISION or VARCHAR lengths don't count
+            if current_type._type_affinity is not column.type._type_affinity:
+                mismatches.append(f'{table.name}.{column.name}: database {current_type.compile(dialect=engine.dialect)}, '
+                                  f'model {column_type}')
+        existing_indexes = {index['name'] for index in inspector.get_indexes(table.name)}
+        for index in table.indexes:
+            if index.name not in existing_indexes:
+                statements.append(index)
+    return statements, mismatches
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--dry-run', action='store_true')
+    args = parser.parse_args()
+
+    app = create_app()
+    with app.app_context():
+        statements, mismatches = plan(db.engine)
+        for statement in statements:
+            print(statement if isinstance(statement, str) else f'CREATE INDEX {statement.name}')
+            if args.dry_run:
+                continue
+            if isinstance(statement, str):
+                db.session.execute(text(statement))
+                db.session.commit()
+            else:
+                statement.create(bind=db.engine, checkfirst=True)
+        if not statements:
+            print('Schema is up to date.')
+        for mismatch in mismatches:
+            print(f'Type change needs a manual migration: {mismatch}')
+    sys.exit(1 if mismatches else 0)
+
+
+if __name__ == '__main__':
+    main()
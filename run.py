@@ -1,7 +1,9 @@
 # /run.py
 from app import create_app
 
-app = create_app()
+# CFG pool workers (forkserver/spawn) re-import this module as __mp_main__ and must not build the app
+if __name__ != '__mp_main__':
+    app = create_app()
 
 if __name__ == '__main__':
     app.run(host='0.0.0.0', port=5000, debug=True)
\ No newline at end of file
@@ -9,6 +9,9 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
   const [isDragging, setIsDragging] = useState(false);
   const [startPos, setStartPos] = useState({ x: 0, y: 0 });
   const [isFullscreen, setIsFullscreen] = useState(false);
+  const [methods, setMethods] = useState([]);
+  const [cfgTarget, setCfgTarget] = useState('');
+  const [targetHistory, setTargetHistory] = useState([]);
   const containerRef = useRef(null);
   const wrapperRef = useRef(null);
   const imageRef = useRef(null);
@@ -17,7 +20,25 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
   const minScale = 0.5;
   const maxScale = 3.0;
 
-  const generateCFG = async () => {
+  const fetchMethods = async (codeToUse) => {
+    try {
+      const response = await fetch('/cfg-methods', {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json' },
+        credentials: 'include',
+        body: JSON.stringify({ code: codeToUse }),
+      });
+      if (response.ok) {
+        const data = await response.json();
+        setMethods(data.methods || []);
+      }
+    } catch (error) {
+      console.error('CFG methods error:', error);
+    }
+  };
+
+  // target is a "Class.method" key; an empty target builds the CFG for the whole file
+  const generateCFG = async (target = cfgTarget, history = []) => {
     const codeToUse = editorRef.current?.getValue() || code;
     if (!codeToUse.trim()) {
       alert('Please submit code first before generating CFG');
@@ -26,6 +47,11 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
 
     setIsLoading(true);
     setCfgSvg(null);
+    setCfgTarget(target);
+    setTargetHistory(history);
+    if (!target) {
+      fetchMethods(codeToUse);
+    }
 
     try {
       const response = await fetch('/generate-cfg', {
@@ -35,7 +61,7 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
           'Accept': 'image/svg+xml',
         },
         credentials: 'include',
-        body: JSON.stringify({ code: codeToUse, theme: theme }),
+        body: JSON.stringify({ code: codeToUse, theme: theme, target: target || null }),
       });
 
       if (!response.ok) {
@@ -61,6 +87,21 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
     }
   };
 
+  // Call stubs link to "#cfg:Class.method"; clicking one fetches the callee's CFG
+  const handleCfgClick = (e) => {
+    const link = e.target.closest('a');
+    if (!link) return;
+    const href = link.getAttribute('xlink:href') || link.getAttribute('href') || '';
+    if (!href.startsWith('#cfg:')) return;
+    e.preventDefault();
+    generateCFG(href.slice('#cfg:'.length), [...targetHistory, cfgTarget]);
+  };
+
+  const collapseCFG = () => {
+    if (targetHistory.length === 0) return;
+    generateCFG(targetHistory[targetHistory.length - 1], targetHistory.slice(0, -1));
+  };
+
   const applyDarkThemeToSVG = (svgText) => {
     // Parse SVG and apply dark theme
     const parser = new DOMParser();
@@ -354,11 +395,29 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
         <button
           id="generateCfgBtn"
           className="btn btn-sm clarifai-btn"
-          onClick={generateCFG}
+          onClick={() => generateCFG(cfgTarget)}
           disabled={isLoading}
         >
           Generate CFG
         </button>
+        {methods.length > 0 && (
+          <select
+            className="form-select form-select-sm w-auto"
+            value={cfgTarget}
+            onChange={(e) => generateCFG(e.target.value)}
+            disabled={isLoading}
+          >
+            <option value="">All methods</option>
+            {methods.map((method) => (
+              <option key={method} value={method}>{method}</option>
+            ))}
+          </select>
+        )}
+        {targetHistory.length > 0 && (
+          <button className="btn btn-sm btn-outline-secondary" onClick={collapseCFG} disabled={isLoading}>
+            <i className="bi bi-arrow-left me-1"></i>Back
+          </button>
+        )}
         <div className="d-flex gap-2 flex-wrap align-items-center">
           <button
             id="downloadCfgBtn"
@@ -410,6 +469,7 @@ const CFGVisualization = ({ code, editorRef, theme, isLoading, setIsLoading }) =
           <div
             id="cfgImageWrapper"
             ref={wrapperRef}
+            onClick={handleCfgClick}
             style={{
               position: 'absolute',
               transformOrigin: '0 0',
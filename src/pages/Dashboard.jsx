@@ -14,21 +14,26 @@ const Dashboard = () => {
   const [stats, setStats] = useState(null);
   const [isSidebarOpen, setIsSidebarOpen] = useState(true);
   const [searchQuery, setSearchQuery] = useState('');
+  const [sortBy, setSortBy] = useState('timestamp');
+  const [nextCursor, setNextCursor] = useState(null);
   const codePreviewRef = useRef(null);
 
   useEffect(() => {
     fetchSubmissions();
-  }, []);
+  }, [sortBy]);
 
-  const fetchSubmissions = async () => {
+  const fetchSubmissions = async (cursor = null) => {
     try {
-      const response = await fetch('/api/dashboard', {
+      const cursorParam = cursor ? `&cursor=${encodeURIComponent(cursor)}` : '';
+      const response = await fetch(`/api/dashboard?sort=${sortBy}${cursorParam}`, {
         credentials: 'include',
       });
       if (response.ok) {
         const data = await response.json();
-        setSubmissions(data.submissions || []);
-        setFilteredSubmissions(data.submissions || []);
+        // Later pages are appended to the submissions already loaded
+        const page = data.submissions || [];
+        setSubmissions(cursor ? [...submissions, ...page] : page);
+        setNextCursor(data.next_cursor || null);
         setUsername(data.username || '');
         setStats(data.stats || null);
       }
@@ -94,7 +99,7 @@ const Dashboard = () => {
         if (stats) {
           setStats({
             ...stats,
-            total_submissions: updatedSubmissions.length
+            total_submissions: stats.total_submissions - 1
           });
         }
       }
@@ -287,6 +292,17 @@ const Dashboard = () => {
                     </button>
                   )}
                 </div>
+                <select
+                  className="form-select form-select-sm mt-2"
+                  value={sortBy}
+                  onChange={(e) => setSortBy(e.target.value)}
+                  title="Sort submissions"
+                >
+                  <option value="timestamp">Newest first</option>
+                  <option value="complexity">Highest complexity</option>
+                  <option value="loc">Most lines of code</option>
+                  <option value="methods">Most methods</option>
+                </select>
               </div>
             )}
             
@@ -306,6 +322,14 @@ const Dashboard = () => {
                     onRename={(newName) => renameSubmission(sub.id, newName)}
                   />
                 ))}
+                {nextCursor && (
+                  <button
+                    className="btn btn-sm btn-outline-secondary w-100 my-2"
+                    onClick={() => fetchSubmissions(nextCursor)}
+                  >
+                    Load more
+                  </button>
+                )}
               </div>
             )}
           </div>
@@ -456,6 +480,11 @@ const SubmissionItem = ({ submission, isSelected, onSelect, onDelete, onRename }
         ) : (
           <div className="submission-name-display">
             {submission.submission_name}
+            {submission.metrics && submission.metrics.max_complexity !== null && (
+              <div className="submission-metrics">
+                CC {submission.metrics.max_complexity} · {submission.metrics.method_count} methods · {submission.metrics.loc} LOC
+              </div>
+            )}
           </div>
         )}
         <div className="submission-actions" onClick={(e) => e.stopPropagation()}>
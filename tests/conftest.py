@@ -0,0 +1,10 @@
+# tests/conftest.py
+"""
+Unit tests for the analysis engines. Run from the repository root:
+    pytest tests
+"""
+import os
+import sys
+
+ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), '..'))
+sys.path.insert(0, ROOT)
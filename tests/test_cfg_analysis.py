@@ -0,0 +1,111 @@
+# tests/test_cfg_analysis.py
+"""Dominators, back edges and loop nesting on small hand-built CFGs and one large generated one"""
+import time
+import networkx as nx
+from app.cfg_analysis import compute_dominators, find_natural_loops, loop_nesting_depth, analyze_method
+
+
+def graph(*edges):
+    cfg = nx.DiGraph()
+    cfg.add_edges_from(edges)
+    return cfg
+
+
+def analyze(cfg, entry='E'):
+    order, idom = compute_dominators(cfg, entry)
+    back_edges, loops, reducible = find_natural_loops(cfg, order, idom)
+    return order, idom, back_edges, loops, reducible
+
+
+def test_diamond():
+    cfg = graph(('E', 'A'), ('E', 'B'), ('A', 'J'), ('B', 'J'))
+    order, idom, back_edges, loops, reducible = analyze(cfg)
+    assert order[0] == 'E' and set(order) == {'E', 'A', 'B', 'J'}
+    assert idom == {'E': 'E', 'A': 'E', 'B': 'E', 'J': 'E'}
+    assert back_edges == [] and loops == [] and reducible
+    assert analyze_method(cfg, 'E')['cyclomatic_complexity'] == 2
+
+
+def test_chain_dominators():
+    cfg = graph(('E', 'A'), ('A', 'B'), ('B', 'C'))
+    _, idom, *_ = analyze(cfg)
+    assert idom == {'E': 'E', 'A': 'E', 'B': 'A', 'C': 'B'}
+
+
+def test_self_loop():
+    cfg = graph(('E', 'L'), ('L', 'L'), ('L', 'X'))
+    _, _, back_edges, loops, reducible = analyze(cfg)
+    assert back_edges == [('L', 'L')]
+    assert [(loop['header'], loop['blocks'], loop['depth']) for loop in loops] == [('L', ['L'], 1)]
+    assert reducible
+
+
+def test_nested_loops():
+    # E -> H1 -> H2 <-> B, H2 -> L1 -> H1, H1 -> X
+    cfg = graph(('E', 'H1'), ('H1', 'H2'), ('H2', 'B'), ('B', 'H2'),
+                ('H2', 'L1'), ('L1', 'H1'), ('H1', 'X'))
+    order, idom, back_edges, loops, reducible = analyze(cfg)
+    assert sorted(back_edges) == [('B', 'H2'), ('L1', 'H1')]
+    assert idom['X'] == 'H1' and idom['L1'] == 'H2' and idom['B'] == 'H2'
+    by_header = {loop['header']: loop for loop in loops}
+    assert set(by_header['H1']['blocks']) == {'H1', 'H2', 'B', 'L1'}
+    assert set(by_header['H2']['blocks']) == {'H2', 'B'}
+    assert by_header['H2']['parent'] == 'H1' and by_header['H1']['parent'] is None
+    assert (by_header['H1']['depth'], by_header['H2']['depth']) == (1, 2)
+    depth = loop_nesting_depth(order, loops)
+    assert depth == {'E': 0, 'H1': 1, 'H2': 2, 'B': 2, 'L1': 1, 'X': 0}
+    assert reducible
+
+
+def test_back_edges_sharing_a_header_are_merged():
+    # continue-style second latch: H -> A -> H and H -> B -> H
+    cfg = graph(('E', 'H'), ('H', 'A'), ('A', 'H'), ('H', 'B'), ('B', 'H'), ('H', 'X'))
+    _, _, back_edges, loops, _ = analyze(cfg)
+    assert sorted(back_edges) == [('A', 'H'), ('B', 'H')]
+    assert len(loops) == 1 and set(loops[0]['blocks']) == {'H', 'A', 'B'}
+    assert sorted(map(tuple, loops[0]['back_edges'])) == [('A', 'H'), ('B', 'H')]
+
+
+def test_irreducible():
+    # Two entries into the A <-> B cycle: neither block dominates the other
+    cfg = graph(('E', 'A'), ('E', 'B'), ('A', 'B'), ('B', 'A'), ('B', 'X'))
+    _, idom, back_edges, loops, reducible = analyze(cfg)
+    assert idom['A'] == 'E' and idom['B'] == 'E'
+    assert back_edges == [] and loops == []
+    assert not reducible
+
+
+def test_unreachable_blocks_are_ignored():
+    # U has no path from E but jumps into the loop and to A
+    cfg = graph(('E', 'A'), ('A', 'H'), ('H', 'A'), ('U', 'A'), ('U', 'H'), ('U', 'V'))
+    order, idom, back_edges, loops, reducible = analyze(cfg)
+    assert 'U' not in order and 'V' not in order
+    assert idom['A'] == 'E' and idom['H'] == 'A'
+    assert back_edges == [('H', 'A')]
+    assert set(loops[0]['blocks']) == {'A', 'H'}
+    result = analyze_method(cfg, 'E')
+    assert result['blocks'] == 3 and result['edges'] == 3
+
+
+def ladder(loops):
+    """E, then `loops` consecutive while loops each containing an if/else diamond (5 blocks per loop)"""
+    cfg = nx.DiGraph()
+    previous = 'E'
+    for i in range(loops):
+        header, then_block, else_block, join, after = (f"H{i}", f"T{i}", f"F{i}", f"J{i}", f"X{i}")
+        cfg.add_edges_from([(previous, header), (header, then_block), (header, else_block),
+                            (then_block, join), (else_block, join), (join, header), (header, after)])
+        previous = after
+    return cfg
+
+
+def test_large_generated_cfg_is_fast():
+    cfg = ladder(2000)  # 10001 blocks
+    start = time.perf_counter()
+    result = analyze_method(cfg, 'E')
+    elapsed = time.perf_counter() - start
+    assert result['blocks'] == 10001
+    assert len(result['loops']) == 2000 and result['max_loop_depth'] == 1
+    assert result['reducible']
+    assert result['idom']['X1999'] == 'H1999' and result['idom']['H1'] == 'X0'
+    assert elapsed < 1.0, f"analysis of 10k blocks took {elapsed:.3f}s"
@@ -0,0 +1,156 @@
+# tests/test_cfg_dataflow.py
+"""Worklist solver, reaching definitions, liveness and unused assignments on hand-built CFGs"""
+import time
+import networkx as nx
+from javalang import tree
+from app.cfg_dataflow import solve_dataflow, analyze_method_dataflow, FORWARD, BACKWARD
+
+
+def ref(name):
+    return tree.MemberReference(member=name, qualifier='')
+
+
+def expr(*names):
+    """Read every name (a literal when there are none)"""
+    if not names:
+        return tree.Literal(value='1')
+    node = ref(names[0])
+    for name in names[1:]:
+        node = tree.BinaryOperation(operator='+', operandl=node, operandr=ref(name))
+    return node
+
+
+def declare(name, *reads):
+    return tree.LocalVariableDeclaration(declarators=[tree.VariableDeclarator(name=name, initializer=expr(*reads))])
+
+
+def assign(name, *reads):
+    return tree.Assignment(expressionl=ref(name), value=expr(*reads), type='=')
+
+
+def use(*names):
+    return tree.MethodInvocation(member='print', arguments=[ref(name) for name in names])
+
+
+def method_cfg(blocks, edges):
+    """blocks: {name: (line, [ast nodes])}; the first block is the entry"""
+    cfg = nx.DiGraph()
+    for name, (line, statements) in blocks.items():
+        cfg.add_node(name, line=line, ast_nodes=list(statements))
+    cfg.add_edges_from(edges)
+    return cfg, next(iter(blocks))
+
+
+def unused_lines(result):
+    return sorted((item['variable'], item['line']) for item in result['unused_assignments'])
+
+
+def test_solver_forward_diamond():
+    # 0 -> 1, 0 -> 2, 1 -> 3, 2 -> 3; definitions d0 (block 0) and d1 (block 1) of the same variable
+    preds, succs = [[], [0], [0], [1, 2]], [[1, 2], [3], [3], []]
+    gen = [0b01, 0b10, 0, 0]
+    kill = [0b11, 0b11, 0, 0]
+    in_sets, out_sets = solve_dataflow(preds, succs, gen, kill, FORWARD)
+    assert out_sets == [0b01, 0b10, 0b01, 0b11]
+    assert in_sets == [0, 0b01, 0b01, 0b11]
+
+
+def test_solver_forward_loop_reaches_fixpoint():
+    # 0 -> 1 <-> 2, 1 -> 3; d0 in block 0, d1 in block 2 (both kill each other)
+    preds, succs = [[], [0, 2], [1], [1]], [[1], [2, 3], [1], []]
+    gen = [0b01, 0, 0b10, 0]
+    kill = [0b11, 0, 0b11, 0]
+    in_sets, _ = solve_dataflow(preds, succs, gen, kill, FORWARD)
+    assert in_sets[1] == 0b11 and in_sets[3] == 0b11
+
+
+def test_solver_backward_liveness():
+    # Variables: bit 0 = a, bit 1 = b. Block 0 defines a, block 1 uses a and defines b, block 2 uses b
+    preds, succs = [[], [0], [1]], [[1], [2], []]
+    use_sets = [0, 0b01, 0b10]
+    def_sets = [0b01, 0b10, 0]
+    live_in, live_out = solve_dataflow(preds, succs, use_sets, def_sets, BACKWARD)
+    assert live_in == [0, 0b01, 0b10]
+    assert live_out == [0b01, 0b10, 0]
+
+
+def test_reaching_definitions_and_liveness_on_diamond():
+    cfg, entry = method_cfg({
+        'B0': (1, [declare('x'), declare('y')]),
+        'B1': (2, [assign('x')]),
+        'B2': (3, []),
+        'B3': (4, [use('x')])
+    }, [('B0', 'B1'), ('B0', 'B2'), ('B1', 'B3'), ('B2', 'B3')])
+    result = analyze_method_dataflow(cfg, entry)
+
+    definitions = {(d['variable'], d['line']): d['id'] for d in result['definitions']}
+    assert set(definitions) == {('x', 1), ('y', 1), ('x', 2)}
+    blocks = result['blocks']
+    assert set(blocks['B3']['reaching_in']) == set(definitions.values())
+    assert set(blocks['B1']['reaching_out']) == {definitions[('y', 1)], definitions[('x', 2)]}
+    assert blocks['B3']['live_in'] == ['x']
+    assert blocks['B0']['live_out'] == ['x'] and blocks['B1']['live_in'] == []
+    assert unused_lines(result) == [('y', 1)]
+
+
+def test_overwritten_assignment_in_one_block_is_unused():
+    cfg, entry = method_cfg({'B0': (1, [declare('x'), assign('x'), use('x')])}, [])
+    result = analyze_method_dataflow(cfg, entry)
+    assert len(result['unused_assignments']) == 1
+    unused = result['unused_assignments'][0]
+    assert unused['variable'] == 'x' and unused['definition'] == 0
+
+
+def test_loop_counter_is_live_around_the_back_edge():
+    # i = 0; while (i < n) { i = i + 1; }  -- n is not a local, so it is never reported
+    cfg, entry = method_cfg({
+        'E': (1, [declare('i')]),
+        'H': (2, [use('i', 'n')]),
+        'B': (3, [assign('i', 'i')]),
+        'X': (4, [])
+    }, [('E', 'H'), ('H', 'B'), ('B', 'H'), ('H', 'X')])
+    result = analyze_method_dataflow(cfg, entry)
+    blocks = result['blocks']
+    assert set(blocks['H']['live_in']) == {'i', 'n'}
+    assert set(blocks['B']['live_out']) == {'i', 'n'}
+    assert len(blocks['H']['reaching_in']) == 2  # i = 0 and i = i + 1
+    assert result['unused_assignments'] == []
+
+
+def test_parameters_and_assigned_fields_are_not_reported():
+    cfg, entry = method_cfg({
+        'E': (1, [tree.FormalParameter(name='p')]),
+        'B': (2, [assign('field'), assign('p')])
+    }, [('E', 'B')])
+    result = analyze_method_dataflow(cfg, entry)
+    # p is a local (parameter) overwritten without a read; field was never declared here
+    assert unused_lines(result) == [('p', 2)]
+
+
+def test_large_generated_method_is_fast():
+    # 1000 consecutive loops, each with an if/else writing and reading its own variable: 5001 blocks
+    blocks = {'E': (1, [declare('total')])}
+    edges = []
+    previous = 'E'
+    for i in range(1000):
+        v = f"v{i}"
+        blocks.update({
+            f"H{i}": (i * 10 + 2, [use('total')]),
+            f"T{i}": (i * 10 + 3, [declare(v, 'total')]),
+            f"F{i}": (i * 10 + 4, [declare(v)]),
+            f"J{i}": (i * 10 + 5, [assign('total', 'total', v)]),
+            f"X{i}": (i * 10 + 6, [])
+        })
+        edges += [(previous, f"H{i}"), (f"H{i}", f"T{i}"), (f"H{i}", f"F{i}"), (f"T{i}", f"J{i}"),
+                  (f"F{i}", f"J{i}"), (f"J{i}", f"H{i}"), (f"H{i}", f"X{i}")]
+        previous = f"X{i}"
+    cfg, entry = method_cfg(blocks, edges)
+
+    start = time.perf_counter()
+    result = analyze_method_dataflow(cfg, entry)
+    elapsed = time.perf_counter() - start
+    assert len(result['blocks']) == 5001
+    assert len(result['definitions']) == 1 + 3 * 1000
+    assert result['unused_assignments'] == []
+    assert result['blocks']['X999']['live_in'] == []
+    assert elapsed < 2.0, f"dataflow on 5k blocks took {elapsed:.3f}s"
@@ -0,0 +1,61 @@
+# tests/test_cfg_parallel.py
+"""The process-pool CFG build must produce the same graph as the sequential one"""
+from collections import Counter
+from app.cfg_utils import CFGGenerator, PARALLEL_MIN_METHODS
+
+
+def non_recursive_java(methods):
+    """One class whose method i branches, loops and calls method i + 1 (no recursion)"""
+    lines = ["public class Chain {"]
+    for i in range(methods):
+        call = f"        m{i + 1}(x);\n" if i + 1 < methods else ""
+        lines.append(
+            f"    int m{i}(int x) {{\n"
+            f"        int y = x;\n"
+            f"        if (x > {i}) {{\n"
+            f"            y = y + 1;\n"
+            f"        }} else {{\n"
+            f"            y = y - 1;\n"
+            f"        }}\n"
+            f"        while (y > 0) {{\n"
+            f"            y--;\n"
+            f"        }}\n"
+            f"{call}"
+            f"        return y;\n"
+            f"    }}\n"
+        )
+    lines.append("}")
+    return "\n".join(lines)
+
+
+def canonical(generator):
+    """Block ids differ between the two builds; compare blocks and edges by their content"""
+    cfg = generator.cfg
+
+    def signature(node):
+        data = cfg.nodes[node]
+        return (str(data['kind']), data['name'], data['line'], tuple(data['statements']),
+                generator.node_method_map.get(node))
+
+    nodes = Counter(signature(node) for node in cfg.nodes())
+    edges = Counter((signature(src), signature(dst)) for src, dst in cfg.edges())
+    entries = {name: signature(entry) for name, entry in generator.method_entries.items()}
+    exits = {name: sorted(map(signature, blocks)) for name, blocks in generator.method_exits.items()}
+    return nodes, edges, entries, exits
+
+
+def test_parallel_build_matches_sequential():
+    code = non_recursive_java(PARALLEL_MIN_METHODS + 16)
+    sequential = CFGGenerator(workers=1)
+    sequential.generate(code)
+    # Call the pool path directly so a broken pool fails the test instead of falling back to sequential
+    parallel = CFGGenerator(workers=2)
+    parallel._process_methods_parallel(parallel._collect_methods(parallel._parse(code)))
+
+    assert not parallel.call_stubs
+    assert parallel.cfg.number_of_nodes() == sequential.cfg.number_of_nodes()
+    assert parallel.cfg.number_of_edges() == sequential.cfg.number_of_edges()
+    assert canonical(parallel) == canonical(sequential)
+    # Block AST nodes come back resolved against the parent's own parse
+    for _, data in parallel.cfg.nodes(data=True):
+        assert all(hasattr(ast_node, 'position') for ast_node in data['ast_nodes'])